@@ -22,6 +22,17 @@ public class Constants {
 
     public static final String EMAIL_OTP_PLACE_HOLDER = "{{email.otp}}";
     public static final String EMAIL_ADDRESS_PACE_HOLDER = "{{email.address}}";
+    public static final String TOTP_HMAC_ENGINE_JCE = "jce";
+    public static final String TOTP_HMAC_ENGINE_BUILTIN = "builtin";
+    public static final String TOTP_SECURE_RANDOM_AUTO = "auto";
+    public static final String EMAIL_OTP_REJECTION_FAIL = "fail";
+    public static final String EMAIL_OTP_REJECTION_CALLER_RUNS = "caller-runs";
+    public static final String EMAIL_OTP_MODE_STORED = "stored";
+    public static final String EMAIL_OTP_MODE_STATELESS = "stateless";
+    public static final String EMAIL_OTP_STORE_JPA = "jpa";
+    public static final String EMAIL_OTP_STORE_MEMORY = "memory";
+    public static final String EMAIL_OTP_STORE_MAPPED = "mapped";
+    public static final String EMAIL_OTP_STORE_JDBC = "jdbc";
 
     public enum Error {
 
@@ -44,7 +55,17 @@ public class Constants {
         OPEN_SEC_MF_009("009", "Error initializing the algorithm",
                 "Error initializing the algorithm.."),
         OPEN_SEC_MF_010("010", "Invalid TOTP secret",
-                "Invalid TOTP secret. %s");
+                "Invalid TOTP secret. %s"),
+        OPEN_SEC_MF_011("011", "Invalid TOTP profile",
+                "Invalid TOTP profile : %s."),
+        OPEN_SEC_MF_012("012", "Invalid TOTP configuration",
+                "Invalid TOTP configuration : %s."),
+        OPEN_SEC_MF_013("013", "Error writing TOTP secrets",
+                "Error while writing the generated TOTP secrets."),
+        OPEN_SEC_MF_014("014", "Email OTP dispatch queue full",
+                "Email OTP dispatch queue is full, couldn't send the email OTP to : %s."),
+        OPEN_SEC_MF_015("015", "Invalid email OTP configuration",
+                "Invalid email OTP configuration : %s.");
 
         private final String code;
         private final String message;
@@ -77,4 +98,14 @@ public class Constants {
 
         ACTIVE, EXPIRED, USED, REVOKED;
     }
+
+    public enum OTPValidationStatus {
+
+        VALID, INVALID, EXPIRED, USED, REVOKED;
+    }
+
+    public enum TOTPValidationStatus {
+
+        VALID, INVALID, ERROR;
+    }
 }
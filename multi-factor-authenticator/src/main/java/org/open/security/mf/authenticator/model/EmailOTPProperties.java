@@ -18,9 +18,23 @@
 
 package org.open.security.mf.authenticator.model;
 
+import org.open.security.mf.authenticator.exception.OpenSecurityMfException;
+import org.open.security.mf.authenticator.util.Utils;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.stream.Stream;
+
+import javax.annotation.PostConstruct;
+
+import static org.open.security.mf.authenticator.constant.Constants.EMAIL_OTP_MODE_STORED;
+import static org.open.security.mf.authenticator.constant.Constants.EMAIL_OTP_REJECTION_FAIL;
+import static org.open.security.mf.authenticator.constant.Constants.EMAIL_OTP_STORE_JDBC;
+import static org.open.security.mf.authenticator.constant.Constants.EMAIL_OTP_STORE_JPA;
+import static org.open.security.mf.authenticator.constant.Constants.EMAIL_OTP_STORE_MAPPED;
+import static org.open.security.mf.authenticator.constant.Constants.EMAIL_OTP_STORE_MEMORY;
+import static org.open.security.mf.authenticator.constant.Constants.Error.OPEN_SEC_MF_015;
+
 @Configuration
 @ConfigurationProperties("email.otp")
 public class EmailOTPProperties {
@@ -28,8 +42,47 @@ public class EmailOTPProperties {
     private int length;
     private String subject;
     private String body;
+    private String htmlBody;
     private int expiry;
+    private int resendWindow;
     private String charset;
+    private String mode = EMAIL_OTP_MODE_STORED;
+    private String statelessKey;
+    private String store = EMAIL_OTP_STORE_JPA;
+    private long storeWheelTickMillis = 1000;
+    private int storeWheelSize = 512;
+    private String storeFile = "email-otp.store";
+    private int storeSlots = 65536;
+    private boolean filterEnabled;
+    private long filterExpectedInsertions = 100000;
+    private double filterFpp = 0.01;
+    private boolean asyncEnabled;
+    private int asyncQueueCapacity = 1000;
+    private int asyncWorkers = 2;
+    private int asyncMaxAttempts = 3;
+    private long asyncInitialBackoffMillis = 1000;
+    private long asyncMaxBackoffMillis = 30000;
+    private String asyncRejectionPolicy = EMAIL_OTP_REJECTION_FAIL;
+    private long asyncShutdownTimeoutMillis = 30000;
+    private boolean purgeEnabled;
+    private long purgeIntervalMillis = 60000;
+    private int purgeBatchSize = 1000;
+    private int purgeMaxBatches = 100;
+    private long purgeRetentionMillis;
+
+    /**
+     * Reject an email.otp.store that selects none of the stores, before any bean needs the store.
+     *
+     * @throws OpenSecurityMfException if the store is unknown
+     */
+    @PostConstruct
+    public void validate() throws OpenSecurityMfException {
+
+        if (Stream.of(EMAIL_OTP_STORE_JPA, EMAIL_OTP_STORE_JDBC, EMAIL_OTP_STORE_MEMORY, EMAIL_OTP_STORE_MAPPED)
+                .noneMatch(known -> known.equalsIgnoreCase(store))) {
+            throw Utils.handleException(OPEN_SEC_MF_015, "store=" + store);
+        }
+    }
 
     public String getCharset() {
         return charset;
@@ -39,6 +92,22 @@ public class EmailOTPProperties {
         this.charset = charset;
     }
 
+    public String getMode() {
+        return mode;
+    }
+
+    public void setMode(String mode) {
+        this.mode = mode;
+    }
+
+    public String getStatelessKey() {
+        return statelessKey;
+    }
+
+    public void setStatelessKey(String statelessKey) {
+        this.statelessKey = statelessKey;
+    }
+
     public int getExpiry() {
         return expiry;
     }
@@ -47,6 +116,14 @@ public class EmailOTPProperties {
         this.expiry = expiry;
     }
 
+    public int getResendWindow() {
+        return resendWindow;
+    }
+
+    public void setResendWindow(int resendWindow) {
+        this.resendWindow = resendWindow;
+    }
+
     public String getSubject() {
         return subject;
     }
@@ -63,6 +140,14 @@ public class EmailOTPProperties {
         this.body = body;
     }
 
+    public String getHtmlBody() {
+        return htmlBody;
+    }
+
+    public void setHtmlBody(String htmlBody) {
+        this.htmlBody = htmlBody;
+    }
+
     public int getLength() {
         return length;
     }
@@ -70,4 +155,172 @@ public class EmailOTPProperties {
     public void setLength(int length) {
         this.length = length;
     }
+
+    public boolean isAsyncEnabled() {
+        return asyncEnabled;
+    }
+
+    public void setAsyncEnabled(boolean asyncEnabled) {
+        this.asyncEnabled = asyncEnabled;
+    }
+
+    public int getAsyncQueueCapacity() {
+        return asyncQueueCapacity;
+    }
+
+    public void setAsyncQueueCapacity(int asyncQueueCapacity) {
+        this.asyncQueueCapacity = asyncQueueCapacity;
+    }
+
+    public int getAsyncWorkers() {
+        return asyncWorkers;
+    }
+
+    public void setAsyncWorkers(int asyncWorkers) {
+        this.asyncWorkers = asyncWorkers;
+    }
+
+    public int getAsyncMaxAttempts() {
+        return asyncMaxAttempts;
+    }
+
+    public void setAsyncMaxAttempts(int asyncMaxAttempts) {
+        this.asyncMaxAttempts = asyncMaxAttempts;
+    }
+
+    public long getAsyncInitialBackoffMillis() {
+        return asyncInitialBackoffMillis;
+    }
+
+    public void setAsyncInitialBackoffMillis(long asyncInitialBackoffMillis) {
+        this.asyncInitialBackoffMillis = asyncInitialBackoffMillis;
+    }
+
+    public long getAsyncMaxBackoffMillis() {
+        return asyncMaxBackoffMillis;
+    }
+
+    public void setAsyncMaxBackoffMillis(long asyncMaxBackoffMillis) {
+        this.asyncMaxBackoffMillis = asyncMaxBackoffMillis;
+    }
+
+    public String getAsyncRejectionPolicy() {
+        return asyncRejectionPolicy;
+    }
+
+    public void setAsyncRejectionPolicy(String asyncRejectionPolicy) {
+        this.asyncRejectionPolicy = asyncRejectionPolicy;
+    }
+
+    public long getAsyncShutdownTimeoutMillis() {
+        return asyncShutdownTimeoutMillis;
+    }
+
+    public void setAsyncShutdownTimeoutMillis(long asyncShutdownTimeoutMillis) {
+        this.asyncShutdownTimeoutMillis = asyncShutdownTimeoutMillis;
+    }
+
+    public boolean isPurgeEnabled() {
+        return purgeEnabled;
+    }
+
+    public void setPurgeEnabled(boolean purgeEnabled) {
+        this.purgeEnabled = purgeEnabled;
+    }
+
+    public long getPurgeIntervalMillis() {
+        return purgeIntervalMillis;
+    }
+
+    public void setPurgeIntervalMillis(long purgeIntervalMillis) {
+        this.purgeIntervalMillis = purgeIntervalMillis;
+    }
+
+    public int getPurgeBatchSize() {
+        return purgeBatchSize;
+    }
+
+    public void setPurgeBatchSize(int purgeBatchSize) {
+        this.purgeBatchSize = purgeBatchSize;
+    }
+
+    public int getPurgeMaxBatches() {
+        return purgeMaxBatches;
+    }
+
+    public void setPurgeMaxBatches(int purgeMaxBatches) {
+        this.purgeMaxBatches = purgeMaxBatches;
+    }
+
+    public long getPurgeRetentionMillis() {
+        return purgeRetentionMillis;
+    }
+
+    public void setPurgeRetentionMillis(long purgeRetentionMillis) {
+        this.purgeRetentionMillis = purgeRetentionMillis;
+    }
+
+    public String getStore() {
+        return store;
+    }
+
+    public void setStore(String store) {
+        this.store = store;
+    }
+
+    public long getStoreWheelTickMillis() {
+        return storeWheelTickMillis;
+    }
+
+    public void setStoreWheelTickMillis(long storeWheelTickMillis) {
+        this.storeWheelTickMillis = storeWheelTickMillis;
+    }
+
+    public int getStoreWheelSize() {
+        return storeWheelSize;
+    }
+
+    public void setStoreWheelSize(int storeWheelSize) {
+        this.storeWheelSize = storeWheelSize;
+    }
+
+    public String getStoreFile() {
+        return storeFile;
+    }
+
+    public void setStoreFile(String storeFile) {
+        this.storeFile = storeFile;
+    }
+
+    public int getStoreSlots() {
+        return storeSlots;
+    }
+
+    public void setStoreSlots(int storeSlots) {
+        this.storeSlots = storeSlots;
+    }
+
+    public boolean isFilterEnabled() {
+        return filterEnabled;
+    }
+
+    public void setFilterEnabled(boolean filterEnabled) {
+        this.filterEnabled = filterEnabled;
+    }
+
+    public long getFilterExpectedInsertions() {
+        return filterExpectedInsertions;
+    }
+
+    public void setFilterExpectedInsertions(long filterExpectedInsertions) {
+        this.filterExpectedInsertions = filterExpectedInsertions;
+    }
+
+    public double getFilterFpp() {
+        return filterFpp;
+    }
+
+    public void setFilterFpp(double filterFpp) {
+        this.filterFpp = filterFpp;
+    }
 }
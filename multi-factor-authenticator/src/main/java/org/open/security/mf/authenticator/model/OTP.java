@@ -21,16 +21,24 @@ package org.open.security.mf.authenticator.model;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
 import java.io.Serializable;
 
 @Entity(name = "EMAIL_OTP")
+@Table(name = "EMAIL_OTP", indexes = {
+        @Index(name = "IDX_EMAIL_OTP_EMAIL_OTP", columnList = "EMAIL_ADDRESS, OTP"),
+        @Index(name = "IDX_EMAIL_OTP_EXPIRY_TIME", columnList = "EXPIRY_TIME"),
+        @Index(name = "UK_EMAIL_OTP_ACTIVE", columnList = "EMAIL_ADDRESS, INACTIVE_ID", unique = true)
+})
 public class OTP implements Serializable {
 
     private static final long serialVersionUID = -2148584866458791810L;
 
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
     private int id;
     @Column(name = "EMAIL_ADDRESS")
     private String email;
@@ -40,6 +48,9 @@ public class OTP implements Serializable {
     private String status;
     @Column(name = "EXPIRY_TIME")
     private long expiryTime;
+    // 0 while the OTP is active and the row's id once it isn't, unique per address so it has a single active OTP.
+    @Column(name = "INACTIVE_ID")
+    private int inactiveId;
 
     public OTP(String email, String otp, String status, long expiryTime) {
         this.email = email;
@@ -91,4 +102,12 @@ public class OTP implements Serializable {
     public void setExpiryTime(long expiryTime) {
         this.expiryTime = expiryTime;
     }
+
+    public int getInactiveId() {
+        return inactiveId;
+    }
+
+    public void setInactiveId(int inactiveId) {
+        this.inactiveId = inactiveId;
+    }
 }
@@ -31,6 +31,17 @@ public class SMTPProperties {
     private String password;
     private boolean auth;
     private boolean starttls;
+    private int timeoutMillis = 10000;
+    private int poolSize = 4;
+    private long borrowTimeoutMillis = 10000;
+    private long idleTimeoutMillis = 60000;
+    private long validationIntervalMillis = 10000;
+    private long evictionIntervalMillis = 30000;
+    private boolean batchEnabled;
+    private int batchSize = 20;
+    private long batchLingerMillis = 5;
+    private int batchSenders = 4;
+    private long batchShutdownTimeoutMillis = 10000;
 
     public String getHost() {
         return host;
@@ -79,4 +90,92 @@ public class SMTPProperties {
     public void setStarttls(boolean starttls) {
         this.starttls = starttls;
     }
+
+    public int getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public void setTimeoutMillis(int timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public void setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    public long getBorrowTimeoutMillis() {
+        return borrowTimeoutMillis;
+    }
+
+    public void setBorrowTimeoutMillis(long borrowTimeoutMillis) {
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+    }
+
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    public long getValidationIntervalMillis() {
+        return validationIntervalMillis;
+    }
+
+    public void setValidationIntervalMillis(long validationIntervalMillis) {
+        this.validationIntervalMillis = validationIntervalMillis;
+    }
+
+    public long getEvictionIntervalMillis() {
+        return evictionIntervalMillis;
+    }
+
+    public void setEvictionIntervalMillis(long evictionIntervalMillis) {
+        this.evictionIntervalMillis = evictionIntervalMillis;
+    }
+
+    public boolean isBatchEnabled() {
+        return batchEnabled;
+    }
+
+    public void setBatchEnabled(boolean batchEnabled) {
+        this.batchEnabled = batchEnabled;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public long getBatchLingerMillis() {
+        return batchLingerMillis;
+    }
+
+    public void setBatchLingerMillis(long batchLingerMillis) {
+        this.batchLingerMillis = batchLingerMillis;
+    }
+
+    public int getBatchSenders() {
+        return batchSenders;
+    }
+
+    public void setBatchSenders(int batchSenders) {
+        this.batchSenders = batchSenders;
+    }
+
+    public long getBatchShutdownTimeoutMillis() {
+        return batchShutdownTimeoutMillis;
+    }
+
+    public void setBatchShutdownTimeoutMillis(long batchShutdownTimeoutMillis) {
+        this.batchShutdownTimeoutMillis = batchShutdownTimeoutMillis;
+    }
 }
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.model;
+
+/**
+ * TOTP code parameters of a client population, configured under totp.profiles.&lt;name&gt;.
+ */
+public class TOTPProfileProperties {
+
+    private String hmacAlgorithm = "HmacSHA1";
+    private int digits = 6;
+    private int timeStep = 30;
+    private int windowSize = 3;
+
+    public String getHmacAlgorithm() {
+        return hmacAlgorithm;
+    }
+
+    public void setHmacAlgorithm(String hmacAlgorithm) {
+        this.hmacAlgorithm = hmacAlgorithm;
+    }
+
+    public int getDigits() {
+        return digits;
+    }
+
+    public void setDigits(int digits) {
+        this.digits = digits;
+    }
+
+    public int getTimeStep() {
+        return timeStep;
+    }
+
+    public void setTimeStep(int timeStep) {
+        this.timeStep = timeStep;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public void setWindowSize(int windowSize) {
+        this.windowSize = windowSize;
+    }
+}
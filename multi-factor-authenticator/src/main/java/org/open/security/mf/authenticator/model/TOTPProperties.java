@@ -21,15 +21,107 @@ package org.open.security.mf.authenticator.model;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.open.security.mf.authenticator.constant.Constants.TOTP_HMAC_ENGINE_JCE;
+
 @Configuration
 @ConfigurationProperties("totp")
 public class TOTPProperties {
 
     private String algorithm;
     private String provider;
+    private int randomStripes;
+    private List<String> autoAlgorithms = new ArrayList<>(Arrays.asList("NativePRNGNonBlocking", "DRBG",
+            "SHA1PRNG"));
+    private long autoBenchmarkMillis = 100;
+    private boolean reservoirEnabled;
+    private int reservoirCapacity = 10000;
+    private int reservoirLowWaterMark = 2500;
+    private int reservoirRefillBatch = 1000;
+    private long reservoirRefillIntervalMillis = 100;
     private String keystore;
     private String password;
-    private int length;
+    private String hmacAlgorithm = "HmacSHA1";
+    private int digits = 6;
+    private int timeStep = 30;
+    private int windowSize = 3;
+    private Map<String, TOTPProfileProperties> profiles = new HashMap<>();
+    private String hmacEngine = TOTP_HMAC_ENGINE_JCE;
+    private boolean cacheEnabled;
+    private int cacheSize = 10000;
+    private int batchParallelism;
+    private boolean driftTrackingEnabled;
+    private int driftTrackingSize = 10000;
+    private int driftStableThreshold;
+
+    public int getRandomStripes() {
+        return randomStripes;
+    }
+
+    public void setRandomStripes(int randomStripes) {
+        this.randomStripes = randomStripes;
+    }
+
+    public List<String> getAutoAlgorithms() {
+        return autoAlgorithms;
+    }
+
+    public void setAutoAlgorithms(List<String> autoAlgorithms) {
+        this.autoAlgorithms = autoAlgorithms;
+    }
+
+    public long getAutoBenchmarkMillis() {
+        return autoBenchmarkMillis;
+    }
+
+    public void setAutoBenchmarkMillis(long autoBenchmarkMillis) {
+        this.autoBenchmarkMillis = autoBenchmarkMillis;
+    }
+
+    public boolean isReservoirEnabled() {
+        return reservoirEnabled;
+    }
+
+    public void setReservoirEnabled(boolean reservoirEnabled) {
+        this.reservoirEnabled = reservoirEnabled;
+    }
+
+    public int getReservoirCapacity() {
+        return reservoirCapacity;
+    }
+
+    public void setReservoirCapacity(int reservoirCapacity) {
+        this.reservoirCapacity = reservoirCapacity;
+    }
+
+    public int getReservoirLowWaterMark() {
+        return reservoirLowWaterMark;
+    }
+
+    public void setReservoirLowWaterMark(int reservoirLowWaterMark) {
+        this.reservoirLowWaterMark = reservoirLowWaterMark;
+    }
+
+    public int getReservoirRefillBatch() {
+        return reservoirRefillBatch;
+    }
+
+    public void setReservoirRefillBatch(int reservoirRefillBatch) {
+        this.reservoirRefillBatch = reservoirRefillBatch;
+    }
+
+    public long getReservoirRefillIntervalMillis() {
+        return reservoirRefillIntervalMillis;
+    }
+
+    public void setReservoirRefillIntervalMillis(long reservoirRefillIntervalMillis) {
+        this.reservoirRefillIntervalMillis = reservoirRefillIntervalMillis;
+    }
 
     public String getKeystore() {
         return keystore;
@@ -63,11 +155,99 @@ public class TOTPProperties {
         this.provider = provider;
     }
 
-    public int getLength() {
-        return length;
+    public String getHmacAlgorithm() {
+        return hmacAlgorithm;
+    }
+
+    public void setHmacAlgorithm(String hmacAlgorithm) {
+        this.hmacAlgorithm = hmacAlgorithm;
+    }
+
+    public int getDigits() {
+        return digits;
+    }
+
+    public void setDigits(int digits) {
+        this.digits = digits;
+    }
+
+    public int getTimeStep() {
+        return timeStep;
+    }
+
+    public void setTimeStep(int timeStep) {
+        this.timeStep = timeStep;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public void setWindowSize(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    public Map<String, TOTPProfileProperties> getProfiles() {
+        return profiles;
+    }
+
+    public void setProfiles(Map<String, TOTPProfileProperties> profiles) {
+        this.profiles = profiles;
+    }
+
+    public String getHmacEngine() {
+        return hmacEngine;
+    }
+
+    public void setHmacEngine(String hmacEngine) {
+        this.hmacEngine = hmacEngine;
+    }
+
+    public boolean isCacheEnabled() {
+        return cacheEnabled;
+    }
+
+    public void setCacheEnabled(boolean cacheEnabled) {
+        this.cacheEnabled = cacheEnabled;
+    }
+
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    public void setCacheSize(int cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    public int getBatchParallelism() {
+        return batchParallelism;
+    }
+
+    public void setBatchParallelism(int batchParallelism) {
+        this.batchParallelism = batchParallelism;
+    }
+
+    public boolean isDriftTrackingEnabled() {
+        return driftTrackingEnabled;
+    }
+
+    public void setDriftTrackingEnabled(boolean driftTrackingEnabled) {
+        this.driftTrackingEnabled = driftTrackingEnabled;
+    }
+
+    public int getDriftTrackingSize() {
+        return driftTrackingSize;
+    }
+
+    public void setDriftTrackingSize(int driftTrackingSize) {
+        this.driftTrackingSize = driftTrackingSize;
+    }
+
+    public int getDriftStableThreshold() {
+        return driftStableThreshold;
     }
 
-    public void setLength(int length) {
-        this.length = length;
+    public void setDriftStableThreshold(int driftStableThreshold) {
+        this.driftStableThreshold = driftStableThreshold;
     }
 }
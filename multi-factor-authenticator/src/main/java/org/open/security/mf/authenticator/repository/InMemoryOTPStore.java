@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.repository;
+
+import org.open.security.mf.authenticator.constant.Constants;
+import org.open.security.mf.authenticator.exception.OpenSecurityMfException;
+import org.open.security.mf.authenticator.model.EmailOTPProperties;
+import org.open.security.mf.authenticator.util.Utils;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import static org.open.security.mf.authenticator.constant.Constants.Error.OPEN_SEC_MF_015;
+
+/**
+ * {@link OTPStore} held in memory, for single node deployments. OTPs don't survive a restart.
+ * <p>
+ * Each email address maps to its latest OTP, so issuing a new OTP replaces, and thereby revokes, the earlier one.
+ * A replaced OTP is reported as invalid rather than revoked. Expiry is handled by a hashed timing wheel: an OTP
+ * is added to the slot of the tick it expires in, and each tick removes only the OTPs of its own slot that are due,
+ * so no scan of the whole store is needed.
+ */
+@Component
+@ConditionalOnProperty(name = "email.otp.store", havingValue = Constants.EMAIL_OTP_STORE_MEMORY)
+public class InMemoryOTPStore implements OTPStore {
+
+    private static final int ACTIVE = 0;
+    private static final int USED = 1;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final long tickMillis;
+    private final ConcurrentLinkedQueue<Entry>[] wheel;
+    private final ScheduledExecutorService wheelExecutor;
+    private long currentTick;
+
+    @SuppressWarnings("unchecked")
+    public InMemoryOTPStore(EmailOTPProperties emailOTPProperties) throws OpenSecurityMfException {
+
+        if (emailOTPProperties.getStoreWheelTickMillis() <= 0) {
+            throw Utils.handleException(OPEN_SEC_MF_015, "store-wheel-tick-millis must be positive");
+        }
+        if (emailOTPProperties.getStoreWheelSize() <= 0) {
+            throw Utils.handleException(OPEN_SEC_MF_015, "store-wheel-size must be positive");
+        }
+        this.tickMillis = emailOTPProperties.getStoreWheelTickMillis();
+        this.wheel = new ConcurrentLinkedQueue[emailOTPProperties.getStoreWheelSize()];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.currentTick = System.currentTimeMillis() / tickMillis;
+        this.wheelExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "email-otp-store-wheel");
+            thread.setDaemon(true);
+            return thread;
+        });
+        wheelExecutor.scheduleAtFixedRate(this::advance, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+
+        wheelExecutor.shutdownNow();
+    }
+
+    @Override
+    public void issue(String email, String otp, long expiryTime) {
+
+        Entry entry = new Entry(email, otp, expiryTime);
+        Entry replaced = entries.put(email, entry);
+        // The tick after expiry, so the entry is gone only once it is expired.
+        slot(entry).add(entry);
+        if (replaced != null) {
+            // Otherwise each reissue would hold on to the replaced entry until it expires.
+            slot(replaced).remove(replaced);
+        }
+    }
+
+    @Override
+    public String findActive(String email, long expiryTime) {
+
+        Entry entry = entries.get(email);
+        return entry != null && entry.state.get() == ACTIVE && entry.expiryTime > expiryTime ? entry.otp : null;
+    }
+
+    @Override
+    public Constants.OTPValidationStatus consume(String otp, String email, long now) {
+
+        Entry entry = entries.get(email);
+        if (entry == null || !entry.otp.equals(otp)) {
+            return Constants.OTPValidationStatus.INVALID;
+        }
+        if (entry.expiryTime <= now) {
+            return entry.state.get() == USED ? Constants.OTPValidationStatus.USED
+                    : Constants.OTPValidationStatus.EXPIRED;
+        }
+        return entry.state.compareAndSet(ACTIVE, USED) ? Constants.OTPValidationStatus.VALID
+                : Constants.OTPValidationStatus.USED;
+    }
+
+    @Override
+    public int purgeExpired(long expiryTime, int limit) {
+
+        // Expired entries are removed by the timing wheel.
+        return 0;
+    }
+
+    /**
+     * @return number of OTPs held
+     */
+    public int size() {
+
+        return entries.size();
+    }
+
+    /**
+     * @return number of OTPs waiting in the timing wheel for their expiry
+     */
+    public int getScheduled() {
+
+        int scheduled = 0;
+        for (ConcurrentLinkedQueue<Entry> slot : wheel) {
+            scheduled += slot.size();
+        }
+        return scheduled;
+    }
+
+    private ConcurrentLinkedQueue<Entry> slot(Entry entry) {
+
+        return wheel[(int) Math.floorMod(entry.expiryTick, (long) wheel.length)];
+    }
+
+    private void advance() {
+
+        long now = System.currentTimeMillis() / tickMillis;
+        // Catch up on ticks missed while the thread was delayed.
+        while (currentTick < now) {
+            currentTick++;
+            ConcurrentLinkedQueue<Entry> slot = wheel[(int) Math.floorMod(currentTick, (long) wheel.length)];
+            List<Entry> later = new ArrayList<>();
+            Entry entry;
+            while ((entry = slot.poll()) != null) {
+                if (entry.expiryTick <= currentTick) {
+                    // Only if not replaced by a newer OTP in the meantime.
+                    entries.remove(entry.email, entry);
+                } else {
+                    // Due in a later round of the wheel.
+                    later.add(entry);
+                }
+            }
+            slot.addAll(later);
+        }
+    }
+
+    /**
+     * An issued OTP.
+     */
+    private final class Entry {
+
+        private final String email;
+        private final String otp;
+        private final long expiryTime;
+        private final long expiryTick;
+        private final AtomicInteger state = new AtomicInteger(ACTIVE);
+
+        private Entry(String email, String otp, long expiryTime) {
+
+            this.email = email;
+            this.otp = otp;
+            this.expiryTime = expiryTime;
+            this.expiryTick = expiryTime / tickMillis + 1;
+        }
+    }
+}
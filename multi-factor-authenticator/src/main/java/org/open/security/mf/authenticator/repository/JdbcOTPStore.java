@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.repository;
+
+import org.open.security.mf.authenticator.constant.Constants;
+import org.open.security.mf.authenticator.model.EmailOTPProperties;
+import org.open.security.mf.authenticator.util.OTPLookupFilter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreatorFactory;
+import org.springframework.jdbc.core.SingleColumnRowMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Types;
+import java.util.List;
+
+/**
+ * {@link OTPStore} on the EMAIL_OTP table through plain JDBC, without entity materialisation or a persistence
+ * context. Each query reads only the columns it needs.
+ * <p>
+ * Each statement is declared once, with its parameter types, as a {@link PreparedStatementCreatorFactory}, so a
+ * call only binds its values. Caching the prepared statements themselves is up to the driver: H2 keeps the parsed
+ * statements of each connection, up to its QUERY_CACHE_SIZE, other drivers may need it enabled through the pool's
+ * data source properties. The lookup filter is described in {@link TableOTPStore}.
+ */
+@Component
+@ConditionalOnProperty(name = "email.otp.store", havingValue = Constants.EMAIL_OTP_STORE_JDBC)
+public class JdbcOTPStore extends TableOTPStore {
+
+    private static final PreparedStatementCreatorFactory REVOKE_ACTIVE = statement("UPDATE EMAIL_OTP "
+            + "SET STATUS = 'REVOKED', INACTIVE_ID = ID WHERE EMAIL_ADDRESS = ? AND STATUS = 'ACTIVE'",
+            Types.VARCHAR);
+    private static final PreparedStatementCreatorFactory INSERT = statement("INSERT INTO EMAIL_OTP (EMAIL_ADDRESS, "
+            + "OTP, STATUS, EXPIRY_TIME, INACTIVE_ID) VALUES (?, ?, 'ACTIVE', ?, 0)",
+            Types.VARCHAR, Types.VARCHAR, Types.BIGINT);
+    private static final PreparedStatementCreatorFactory FIND_ACTIVE = statement("SELECT OTP FROM EMAIL_OTP "
+            + "WHERE EMAIL_ADDRESS = ? AND STATUS = 'ACTIVE' AND EXPIRY_TIME > ? ORDER BY EXPIRY_TIME DESC LIMIT 1",
+            Types.VARCHAR, Types.BIGINT);
+    private static final PreparedStatementCreatorFactory CONSUME = statement("UPDATE EMAIL_OTP "
+            + "SET STATUS = 'USED', INACTIVE_ID = ID WHERE EMAIL_ADDRESS = ? AND OTP = ? AND STATUS = 'ACTIVE' "
+            + "AND EXPIRY_TIME > ?", Types.VARCHAR, Types.VARCHAR, Types.BIGINT);
+    private static final PreparedStatementCreatorFactory STATUS = statement("SELECT STATUS FROM EMAIL_OTP "
+            + "WHERE EMAIL_ADDRESS = ? AND OTP = ? ORDER BY ID DESC LIMIT 1", Types.VARCHAR, Types.VARCHAR);
+    private static final PreparedStatementCreatorFactory DELETE_EXPIRED = statement("DELETE FROM EMAIL_OTP "
+            + "WHERE EXPIRY_TIME < ? LIMIT ?", Types.BIGINT, Types.INTEGER);
+    private static final PreparedStatementCreatorFactory RETAINED = statement("SELECT EMAIL_ADDRESS, OTP, "
+            + "EXPIRY_TIME FROM EMAIL_OTP WHERE EXPIRY_TIME > ? ORDER BY EXPIRY_TIME", Types.BIGINT);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public JdbcOTPStore(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                        EmailOTPProperties emailOTPProperties) {
+
+        super(emailOTPProperties);
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @Override
+    public String findActive(String email, long expiryTime) {
+
+        List<String> otp = jdbcTemplate.query(FIND_ACTIVE.newPreparedStatementCreator(
+                new Object[]{email, expiryTime}), SingleColumnRowMapper.newInstance(String.class));
+        return otp.isEmpty() ? null : otp.get(0);
+    }
+
+    @Override
+    public int purgeExpired(long expiryTime, int limit) {
+
+        return jdbcTemplate.update(DELETE_EXPIRED.newPreparedStatementCreator(new Object[]{expiryTime, limit}));
+    }
+
+    @Override
+    protected int load(OTPLookupFilter lookupFilter, long expiryTime) {
+
+        int[] loaded = new int[1];
+        jdbcTemplate.query(RETAINED.newPreparedStatementCreator(new Object[]{expiryTime}), resultSet -> {
+            lookupFilter.add(resultSet.getString(1), resultSet.getString(2), resultSet.getLong(3));
+            loaded[0]++;
+        });
+        return loaded[0];
+    }
+
+    @Override
+    protected void reissue(String email, String otp, long expiryTime) {
+
+        // The unique (EMAIL_ADDRESS, INACTIVE_ID) index admits a single active OTP per address.
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update(REVOKE_ACTIVE.newPreparedStatementCreator(new Object[]{email}));
+            jdbcTemplate.update(INSERT.newPreparedStatementCreator(new Object[]{email, otp, expiryTime}));
+        });
+    }
+
+    @Override
+    protected boolean consumeActive(String otp, String email, long now) {
+
+        return jdbcTemplate.update(CONSUME.newPreparedStatementCreator(new Object[]{email, otp, now})) > 0;
+    }
+
+    @Override
+    protected String findStatus(String otp, String email) {
+
+        List<String> status = jdbcTemplate.query(STATUS.newPreparedStatementCreator(new Object[]{email, otp}),
+                SingleColumnRowMapper.newInstance(String.class));
+        return status.isEmpty() ? null : status.get(0);
+    }
+
+    private static PreparedStatementCreatorFactory statement(String sql, int... types) {
+
+        return new PreparedStatementCreatorFactory(sql, types);
+    }
+}
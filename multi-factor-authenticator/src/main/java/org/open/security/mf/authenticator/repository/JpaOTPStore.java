@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.repository;
+
+import org.open.security.mf.authenticator.constant.Constants;
+import org.open.security.mf.authenticator.model.EmailOTPProperties;
+import org.open.security.mf.authenticator.model.OTP;
+import org.open.security.mf.authenticator.util.OTPLookupFilter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * {@link OTPStore} backed by the EMAIL_OTP table through {@link OTPRepository}. The lookup filter is described in
+ * {@link TableOTPStore}.
+ */
+@Component
+@ConditionalOnProperty(name = "email.otp.store", havingValue = Constants.EMAIL_OTP_STORE_JPA, matchIfMissing = true)
+public class JpaOTPStore extends TableOTPStore {
+
+    private final OTPRepository otpRepository;
+
+    public JpaOTPStore(OTPRepository otpRepository, EmailOTPProperties emailOTPProperties) {
+
+        super(emailOTPProperties);
+        this.otpRepository = otpRepository;
+    }
+
+    @Override
+    public String findActive(String email, long expiryTime) {
+
+        OTP otp = otpRepository.findLatestActive(email, expiryTime);
+        return otp == null ? null : otp.getOtp();
+    }
+
+    @Override
+    public int purgeExpired(long expiryTime, int limit) {
+
+        return otpRepository.deleteExpired(expiryTime, limit);
+    }
+
+    @Override
+    protected int load(OTPLookupFilter lookupFilter, long expiryTime) {
+
+        int loaded = 0;
+        for (OTP otp : otpRepository.findUnexpired(expiryTime)) {
+            lookupFilter.add(otp.getEmail(), otp.getOtp(), otp.getExpiryTime());
+            loaded++;
+        }
+        return loaded;
+    }
+
+    @Override
+    protected void reissue(String email, String otp, long expiryTime) {
+
+        otpRepository.reissue(new OTP(email, otp, Constants.OTPStatus.ACTIVE.toString(), expiryTime));
+    }
+
+    @Override
+    protected boolean consumeActive(String otp, String email, long now) {
+
+        return otpRepository.consume(otp, email, now) > 0;
+    }
+
+    @Override
+    protected String findStatus(String otp, String email) {
+
+        OTP otpEntity = otpRepository.findByOTP(otp, email);
+        return otpEntity == null ? null : otpEntity.getStatus();
+    }
+}
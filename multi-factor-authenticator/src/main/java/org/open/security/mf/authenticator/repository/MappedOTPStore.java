@@ -0,0 +1,405 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.repository;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.open.security.mf.authenticator.constant.Constants;
+import org.open.security.mf.authenticator.exception.OpenSecurityMfException;
+import org.open.security.mf.authenticator.model.EmailOTPProperties;
+import org.open.security.mf.authenticator.util.Utils;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.PreDestroy;
+
+import static org.open.security.mf.authenticator.constant.Constants.Error.OPEN_SEC_MF_015;
+
+/**
+ * {@link OTPStore} kept in a memory-mapped file, so issued OTPs survive a restart of the node without a database.
+ * <p>
+ * The file is a header followed by fixed-size slots. Each slot packs its state, the OTP length, two 64-bit hashes
+ * of the email address, the expiry time and up to {@value #MAX_OTP_LENGTH} OTP characters. Slots are split into
+ * groups of {@value #GROUP_SIZE}, each guarded by its own lock. An email address hashes to a group and a start
+ * slot within it, and is found by linear probing within the group. Removed slots become tombstones so probing
+ * continues past them. Reads and writes use absolute buffer accessors and allocate nothing.
+ * <p>
+ * Every purge interval a background sweep reclaims the slots expired longer than the purge retention ago and
+ * forces the file to disk, whether or not the purger is enabled. Writes reach the page cache straight away, so
+ * they survive a crash of the process, and the file is forced to disk on every sweep and on shutdown.
+ */
+@Component
+@ConditionalOnProperty(name = "email.otp.store", havingValue = Constants.EMAIL_OTP_STORE_MAPPED)
+public class MappedOTPStore implements OTPStore {
+
+    private static final Log log = LogFactory.getLog(MappedOTPStore.class);
+
+    private static final int MAGIC = 0x4F545031;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int MAX_OTP_LENGTH = 32;
+    private static final int GROUP_SIZE = 64;
+
+    // Slot layout.
+    private static final int STATE = 0;
+    private static final int OTP_LENGTH = 1;
+    private static final int HASH = 8;
+    private static final int CHECK_HASH = 16;
+    private static final int EXPIRY_TIME = 24;
+    private static final int OTP = 32;
+    private static final int SLOT_SIZE = OTP + MAX_OTP_LENGTH * 2;
+    // A mapped buffer is indexed by int, so the whole file has to fit in Integer.MAX_VALUE bytes.
+    private static final int MAX_SLOTS = Integer.highestOneBit((Integer.MAX_VALUE - HEADER_SIZE) / SLOT_SIZE);
+
+    // Slot states.
+    private static final byte EMPTY = 0;
+    private static final byte ACTIVE = 1;
+    private static final byte USED = 2;
+    private static final byte TOMBSTONE = 3;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int groupMask;
+    private final ReentrantLock[] locks;
+    private final ReentrantLock purgeLock = new ReentrantLock();
+    private final ScheduledExecutorService sweepExecutor;
+    private int purgeCursor;
+
+    public MappedOTPStore(EmailOTPProperties emailOTPProperties) throws OpenSecurityMfException {
+
+        int slots = emailOTPProperties.getStoreSlots();
+        if (slots < GROUP_SIZE || slots > MAX_SLOTS || Integer.bitCount(slots) != 1) {
+            throw Utils.handleException(OPEN_SEC_MF_015, "store-slots must be a power of two, at least "
+                    + GROUP_SIZE + " and at most " + MAX_SLOTS);
+        }
+        long interval = emailOTPProperties.getPurgeIntervalMillis();
+        if (interval <= 0) {
+            throw Utils.handleException(OPEN_SEC_MF_015, "purge-interval-millis must be positive");
+        }
+        int groups = slots / GROUP_SIZE;
+        this.groupMask = groups - 1;
+        this.locks = new ReentrantLock[groups];
+        for (int i = 0; i < groups; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        long size = HEADER_SIZE + (long) slots * SLOT_SIZE;
+        try {
+            channel = FileChannel.open(Paths.get(emailOTPProperties.getStoreFile()), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            boolean compatible = channel.size() == size;
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (!compatible || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                    || buffer.getInt(8) != slots || buffer.getInt(12) != SLOT_SIZE) {
+                if (compatible) {
+                    log.warn("Email OTP store file " + emailOTPProperties.getStoreFile() + " has a different "
+                            + "layout, starting empty.");
+                }
+                initialize(slots, size);
+            }
+        } catch (IOException e) {
+            throw Utils.handleException(OPEN_SEC_MF_015, "store-file=" + emailOTPProperties.getStoreFile(), e);
+        }
+        long retention = emailOTPProperties.getPurgeRetentionMillis();
+        sweepExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "email-otp-store-sweep");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweepExecutor.scheduleWithFixedDelay(() -> sweep(retention), interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+
+        sweepExecutor.shutdownNow();
+        // Waits for a sweep in progress.
+        purgeLock.lock();
+        try {
+            buffer.force();
+            channel.close();
+        } catch (IOException e) {
+            log.error("Error while closing the email OTP store file.", e);
+        } finally {
+            purgeLock.unlock();
+        }
+    }
+
+    @Override
+    public void issue(String email, String otp, long expiryTime) {
+
+        if (otp.length() > MAX_OTP_LENGTH) {
+            throw new IllegalArgumentException("OTPs longer than " + MAX_OTP_LENGTH + " characters can't be stored.");
+        }
+        long hash = hash(email, 0xcbf29ce484222325L);
+        long checkHash = hash(email, 0x9e3779b97f4a7c15L);
+        int group = group(hash);
+        ReentrantLock lock = locks[group];
+        lock.lock();
+        try {
+            int slot = find(group, hash, checkHash);
+            if (slot < 0) {
+                slot = claim(group, hash, expiryTime);
+            }
+            // Replacing the address's OTP revokes the earlier one.
+            int offset = offset(slot);
+            buffer.putLong(offset + HASH, hash);
+            buffer.putLong(offset + CHECK_HASH, checkHash);
+            buffer.putLong(offset + EXPIRY_TIME, expiryTime);
+            buffer.put(offset + OTP_LENGTH, (byte) otp.length());
+            for (int i = 0; i < otp.length(); i++) {
+                buffer.putChar(offset + OTP + i * 2, otp.charAt(i));
+            }
+            // State last, so a slot is never live with half its fields written.
+            buffer.put(offset + STATE, ACTIVE);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String findActive(String email, long expiryTime) {
+
+        long hash = hash(email, 0xcbf29ce484222325L);
+        long checkHash = hash(email, 0x9e3779b97f4a7c15L);
+        int group = group(hash);
+        ReentrantLock lock = locks[group];
+        lock.lock();
+        try {
+            int slot = find(group, hash, checkHash);
+            if (slot < 0 || buffer.get(offset(slot) + STATE) != ACTIVE
+                    || buffer.getLong(offset(slot) + EXPIRY_TIME) <= expiryTime) {
+                return null;
+            }
+            int offset = offset(slot);
+            char[] otp = new char[buffer.get(offset + OTP_LENGTH)];
+            for (int i = 0; i < otp.length; i++) {
+                otp[i] = buffer.getChar(offset + OTP + i * 2);
+            }
+            return new String(otp);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Constants.OTPValidationStatus consume(String otp, String email, long now) {
+
+        long hash = hash(email, 0xcbf29ce484222325L);
+        long checkHash = hash(email, 0x9e3779b97f4a7c15L);
+        int group = group(hash);
+        ReentrantLock lock = locks[group];
+        lock.lock();
+        try {
+            int slot = find(group, hash, checkHash);
+            if (slot < 0 || !matches(offset(slot), otp)) {
+                return Constants.OTPValidationStatus.INVALID;
+            }
+            int offset = offset(slot);
+            if (buffer.get(offset + STATE) == USED) {
+                return Constants.OTPValidationStatus.USED;
+            }
+            if (buffer.getLong(offset + EXPIRY_TIME) <= now) {
+                return Constants.OTPValidationStatus.EXPIRED;
+            }
+            buffer.put(offset + STATE, USED);
+            return Constants.OTPValidationStatus.VALID;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reclaim slots expired before the given time, continuing from where the last call stopped.
+     */
+    @Override
+    public int purgeExpired(long expiryTime, int limit) {
+
+        purgeLock.lock();
+        try {
+            int purged = 0;
+            for (int visited = 0; visited <= groupMask && purged < limit; visited++) {
+                int group = purgeCursor;
+                purgeCursor = (purgeCursor + 1) & groupMask;
+                purged += purgeGroup(group, expiryTime);
+            }
+            buffer.force();
+            return purged;
+        } finally {
+            purgeLock.unlock();
+        }
+    }
+
+    private void sweep(long retentionMillis) {
+
+        try {
+            int purged = purgeExpired(System.currentTimeMillis() - retentionMillis, Integer.MAX_VALUE);
+            if (purged > 0 && log.isDebugEnabled()) {
+                log.debug("Reclaimed " + purged + " expired email OTP slots.");
+            }
+        } catch (RuntimeException e) {
+            // Keep the schedule alive.
+            log.error("Error while sweeping the email OTP store file.", e);
+        }
+    }
+
+    private int purgeGroup(int group, long expiryTime) {
+
+        ReentrantLock lock = locks[group];
+        lock.lock();
+        try {
+            int purged = 0;
+            boolean live = false;
+            int first = group * GROUP_SIZE;
+            for (int slot = first; slot < first + GROUP_SIZE; slot++) {
+                int offset = offset(slot);
+                byte state = buffer.get(offset + STATE);
+                if (state == ACTIVE || state == USED) {
+                    if (buffer.getLong(offset + EXPIRY_TIME) < expiryTime) {
+                        buffer.put(offset + STATE, TOMBSTONE);
+                        purged++;
+                    } else {
+                        live = true;
+                    }
+                }
+            }
+            if (!live) {
+                // Nothing left to probe past, the tombstones can go.
+                for (int slot = first; slot < first + GROUP_SIZE; slot++) {
+                    buffer.put(offset(slot) + STATE, EMPTY);
+                }
+            }
+            return purged;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the slot holding the email address, or -1
+     */
+    private int find(int group, long hash, long checkHash) {
+
+        int first = group * GROUP_SIZE;
+        int start = (int) (hash >>> 58);
+        for (int i = 0; i < GROUP_SIZE; i++) {
+            int slot = first + ((start + i) & (GROUP_SIZE - 1));
+            int offset = offset(slot);
+            byte state = buffer.get(offset + STATE);
+            if (state == EMPTY) {
+                return -1;
+            }
+            if (state != TOMBSTONE && buffer.getLong(offset + HASH) == hash
+                    && buffer.getLong(offset + CHECK_HASH) == checkHash) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return a free slot along the probe sequence, or the slot expiring first when the group is full
+     */
+    private int claim(int group, long hash, long expiryTime) {
+
+        int first = group * GROUP_SIZE;
+        int start = (int) (hash >>> 58);
+        int earliest = -1;
+        long earliestExpiry = Long.MAX_VALUE;
+        for (int i = 0; i < GROUP_SIZE; i++) {
+            int slot = first + ((start + i) & (GROUP_SIZE - 1));
+            int offset = offset(slot);
+            byte state = buffer.get(offset + STATE);
+            if (state == EMPTY || state == TOMBSTONE) {
+                return slot;
+            }
+            long slotExpiry = buffer.getLong(offset + EXPIRY_TIME);
+            if (slotExpiry < earliestExpiry) {
+                earliest = slot;
+                earliestExpiry = slotExpiry;
+            }
+        }
+        log.warn("Email OTP store group " + group + " is full, evicting the OTP expiring first. Consider "
+                + "increasing email.otp.store-slots.");
+        return earliest;
+    }
+
+    private boolean matches(int offset, String otp) {
+
+        int length = buffer.get(offset + OTP_LENGTH);
+        if (length != otp.length()) {
+            return false;
+        }
+        int diff = 0;
+        for (int i = 0; i < length; i++) {
+            diff |= buffer.getChar(offset + OTP + i * 2) ^ otp.charAt(i);
+        }
+        return diff == 0;
+    }
+
+    private int group(long hash) {
+
+        return (int) hash & groupMask;
+    }
+
+    private static int offset(int slot) {
+
+        // Cannot overflow, slots is capped at MAX_SLOTS.
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private void initialize(int slots, long size) throws IOException {
+
+        channel.truncate(size);
+        for (int slot = 0; slot < slots; slot++) {
+            buffer.put(offset(slot) + STATE, EMPTY);
+        }
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, slots);
+        buffer.putInt(12, SLOT_SIZE);
+        // Magic last, an interrupted initialization is redone on the next start.
+        buffer.putInt(0, MAGIC);
+        buffer.force();
+    }
+
+    /**
+     * 64-bit FNV-1a over the characters with the given offset basis, followed by a final mix.
+     */
+    private static long hash(String value, long basis) {
+
+        long hash = basis;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
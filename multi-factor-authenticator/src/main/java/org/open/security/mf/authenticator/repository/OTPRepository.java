@@ -19,13 +19,102 @@
 package org.open.security.mf.authenticator.repository;
 
 import org.open.security.mf.authenticator.model.OTP;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
 
 @Repository
 public interface OTPRepository extends CrudRepository<OTP, Integer> {
 
-    @Query(value = "SELECT * FROM EMAIL_OTP WHERE OTP = ?1 AND EMAIL_ADDRESS = ?2", nativeQuery = true)
+    /**
+     * Get the most recently issued OTP of the email address with the given value. The same value can be issued to
+     * an address more than once.
+     *
+     * @param otp   OTP
+     * @param email email address
+     * @return the OTP, or null if there is none
+     */
+    @Query(value = "SELECT * FROM EMAIL_OTP WHERE OTP = ?1 AND EMAIL_ADDRESS = ?2 ORDER BY ID DESC LIMIT 1",
+            nativeQuery = true)
     OTP findByOTP(String otp, String email);
+
+    /**
+     * Get the OTPs expiring after the given time, earliest expiry first.
+     *
+     * @param expiryTime only OTPs expiring after this time are returned
+     * @return the OTPs
+     */
+    @Query(value = "SELECT * FROM EMAIL_OTP WHERE EXPIRY_TIME > ?1 ORDER BY EXPIRY_TIME", nativeQuery = true)
+    List<OTP> findUnexpired(long expiryTime);
+
+    /**
+     * Get the most recently issued active OTP of the email address that expires after the given time.
+     *
+     * @param email      email address
+     * @param expiryTime only OTPs expiring after this time are considered
+     * @return the OTP, or null if there is none
+     */
+    @Query(value = "SELECT * FROM EMAIL_OTP WHERE EMAIL_ADDRESS = ?1 AND STATUS = 'ACTIVE' AND EXPIRY_TIME > ?2 "
+            + "ORDER BY EXPIRY_TIME DESC LIMIT 1", nativeQuery = true)
+    OTP findLatestActive(String email, long expiryTime);
+
+    /**
+     * Revoke every active OTP of the email address.
+     *
+     * @param email email address
+     * @return number of OTPs revoked
+     */
+    @Modifying
+    @Query(value = "UPDATE EMAIL_OTP SET STATUS = 'REVOKED', INACTIVE_ID = ID WHERE EMAIL_ADDRESS = ?1 "
+            + "AND STATUS = 'ACTIVE'", nativeQuery = true)
+    int revokeActive(String email);
+
+    /**
+     * Revoke the earlier active OTPs of the email address and store the new one, in one transaction.
+     * <p>
+     * The unique (EMAIL_ADDRESS, INACTIVE_ID) index admits a single active OTP per address. When a concurrent issue
+     * for the same address stores its OTP first, this one fails with a
+     * {@link org.springframework.dao.DataAccessException} and can be retried.
+     *
+     * @param otp new OTP
+     * @return the stored OTP
+     */
+    @Transactional
+    default OTP reissue(OTP otp) {
+
+        revokeActive(otp.getEmail());
+        return save(otp);
+    }
+
+    /**
+     * Mark the OTP used if it is active and not expired, in a single statement so concurrent validations of the
+     * same OTP can't both succeed.
+     *
+     * @param otp  OTP
+     * @param email email address the OTP was sent to
+     * @param now  current time, OTPs expiring at or before it are not consumed
+     * @return 1 if the OTP was consumed, 0 otherwise
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE EMAIL_OTP SET STATUS = 'USED', INACTIVE_ID = ID WHERE EMAIL_ADDRESS = ?2 AND OTP = ?1 "
+            + "AND STATUS = 'ACTIVE' AND EXPIRY_TIME > ?3", nativeQuery = true)
+    int consume(String otp, String email, long now);
+
+    /**
+     * Delete at most limit OTPs that expired before the given time, in a transaction of its own so row locks are
+     * held for a single batch only.
+     *
+     * @param expiryTime OTPs expired before this time are deleted
+     * @param limit      maximum number of rows deleted
+     * @return number of rows deleted
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM EMAIL_OTP WHERE EXPIRY_TIME < ?1 LIMIT ?2", nativeQuery = true)
+    int deleteExpired(long expiryTime, int limit);
 }
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.repository;
+
+import org.open.security.mf.authenticator.constant.Constants;
+
+/**
+ * Storage of issued email OTPs. The implementation in use is selected with the email.otp.store property.
+ */
+public interface OTPStore {
+
+    /**
+     * Store a new active OTP for the email address, revoking the address's earlier active OTPs.
+     *
+     * @param email      email address
+     * @param otp        OTP
+     * @param expiryTime time the OTP expires at
+     */
+    void issue(String email, String otp, long expiryTime);
+
+    /**
+     * @param email      email address
+     * @param expiryTime only OTPs expiring after this time are considered
+     * @return the active OTP of the email address if it expires after the given time, otherwise null
+     */
+    String findActive(String email, long expiryTime);
+
+    /**
+     * Mark the OTP used if it is active and not expired. Concurrent calls for the same OTP consume it once.
+     *
+     * @param otp   OTP
+     * @param email email address the OTP was sent to
+     * @param now   current time
+     * @return VALID if the OTP was consumed, otherwise why it wasn't
+     */
+    Constants.OTPValidationStatus consume(String otp, String email, long now);
+
+    /**
+     * Delete at most limit OTPs that expired before the given time.
+     *
+     * @param expiryTime OTPs expired before this time are deleted
+     * @param limit      maximum number of OTPs deleted
+     * @return number of OTPs deleted
+     */
+    int purgeExpired(long expiryTime, int limit);
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.repository;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.open.security.mf.authenticator.constant.Constants;
+import org.open.security.mf.authenticator.model.EmailOTPProperties;
+import org.open.security.mf.authenticator.util.OTPLookupFilter;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * {@link OTPStore} on the EMAIL_OTP table. Subclasses provide the queries, this class the lookup filter, the retry
+ * of concurrent issues and the mapping of a stored status to a validation status.
+ * <p>
+ * With email.otp.filter-enabled an {@link OTPLookupFilter} of the retained OTPs, loaded from the table at startup,
+ * rejects OTPs that were never issued before any SQL runs. The filter only knows the OTPs issued through this
+ * node, so it must stay disabled when several nodes share the table. OTPs stay in the filter until
+ * email.otp.purge-retention-millis past their expiry, as long as the purger keeps their rows, so validating an
+ * expired OTP reports {@code EXPIRED} until then and {@code INVALID} after.
+ */
+public abstract class TableOTPStore implements OTPStore {
+
+    private static final Log log = LogFactory.getLog(TableOTPStore.class);
+
+    // A concurrent issue for the same address only ever wins once per attempt.
+    private static final int ISSUE_ATTEMPTS = 3;
+
+    private final OTPLookupFilter lookupFilter;
+    private final long filterRetentionMillis;
+
+    protected TableOTPStore(EmailOTPProperties emailOTPProperties) {
+
+        this.lookupFilter = emailOTPProperties.isFilterEnabled() ? new OTPLookupFilter(
+                emailOTPProperties.getFilterExpectedInsertions(), emailOTPProperties.getFilterFpp()) : null;
+        this.filterRetentionMillis = emailOTPProperties.getPurgeRetentionMillis();
+    }
+
+    @PostConstruct
+    public void init() {
+
+        if (lookupFilter == null) {
+            return;
+        }
+        int loaded = load(lookupFilter, System.currentTimeMillis() - filterRetentionMillis);
+        log.info("Loaded " + loaded + " retained email OTPs into the lookup filter of "
+                + lookupFilter.getSizeInBytes() + " bytes.");
+    }
+
+    /**
+     * @return the lookup filter, or null if disabled
+     */
+    public OTPLookupFilter getLookupFilter() {
+
+        return lookupFilter;
+    }
+
+    @Override
+    public void issue(String email, String otp, long expiryTime) {
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                reissue(email, otp, expiryTime);
+                break;
+            } catch (DataIntegrityViolationException | ConcurrencyFailureException e) {
+                // A concurrent issue for the address stored its active OTP first, revoke it on the next attempt.
+                if (attempt == ISSUE_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+        if (lookupFilter != null) {
+            lookupFilter.expire(System.currentTimeMillis() - filterRetentionMillis);
+            lookupFilter.add(email, otp, expiryTime);
+        }
+    }
+
+    @Override
+    public Constants.OTPValidationStatus consume(String otp, String email, long now) {
+
+        if (lookupFilter != null) {
+            // Pairs stay in the filter as long as the purger keeps their rows, so expired OTPs still report why.
+            lookupFilter.expire(now - filterRetentionMillis);
+            if (!lookupFilter.mightContain(email, otp)) {
+                // Never issued, or past the purge retention and possibly purged already.
+                return Constants.OTPValidationStatus.INVALID;
+            }
+        }
+        // Consume in one conditional update, the status is only read to tell why it wasn't consumed.
+        if (consumeActive(otp, email, now)) {
+            return Constants.OTPValidationStatus.VALID;
+        }
+        String status = findStatus(otp, email);
+        if (status == null) {
+            if (lookupFilter != null) {
+                lookupFilter.falsePositive();
+            }
+            return Constants.OTPValidationStatus.INVALID;
+        }
+        if (Constants.OTPStatus.USED.toString().equals(status)) {
+            return Constants.OTPValidationStatus.USED;
+        }
+        if (Constants.OTPStatus.REVOKED.toString().equals(status)) {
+            return Constants.OTPValidationStatus.REVOKED;
+        }
+        return Constants.OTPValidationStatus.EXPIRED;
+    }
+
+    /**
+     * Add the OTPs expiring after the given time to the filter.
+     *
+     * @param lookupFilter lookup filter
+     * @param expiryTime   only OTPs expiring after this time are added
+     * @return number of OTPs added
+     */
+    protected abstract int load(OTPLookupFilter lookupFilter, long expiryTime);
+
+    /**
+     * Revoke the active OTPs of the email address and store the new one, in one transaction.
+     *
+     * @param email      email address
+     * @param otp        OTP
+     * @param expiryTime time the OTP expires at
+     * @throws DataIntegrityViolationException if a concurrent issue stored an active OTP for the address first
+     */
+    protected abstract void reissue(String email, String otp, long expiryTime);
+
+    /**
+     * Mark the OTP used if it is active and not expired, in a single statement.
+     *
+     * @param otp   OTP
+     * @param email email address the OTP was sent to
+     * @param now   current time
+     * @return true if the OTP was consumed
+     */
+    protected abstract boolean consumeActive(String otp, String email, long now);
+
+    /**
+     * @param otp   OTP
+     * @param email email address the OTP was sent to
+     * @return status of the latest matching OTP, or null if there is none
+     */
+    protected abstract String findStatus(String otp, String email);
+}
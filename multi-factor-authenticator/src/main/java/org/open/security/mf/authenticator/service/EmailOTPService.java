@@ -36,7 +36,10 @@ public interface EmailOTPService {
     String generateOTP(int length, char[] charset);
 
     /**
-     * Send an email OTP notification to the given email address.
+     * Send an email OTP notification to the given email address. In stored mode, if the active OTP of the address
+     * was issued within the resend window it is mailed again, otherwise a new OTP is stored and the earlier ones of
+     * the address are revoked. In stateless mode the OTP is derived from the email address and nothing is stored or
+     * revoked. When async dispatch is enabled the email is queued, so this returns before it is sent.
      *
      * @param email
      * @throws OpenSecurityMfException
@@ -44,7 +47,7 @@ public interface EmailOTPService {
     void sendEmailOTP(String email) throws OpenSecurityMfException;
 
     /**
-     * Validate if the given OTP is valid.
+     * Validate if the given OTP is valid, and mark it used so it can't be validated again.
      *
      * @param otp
      * @param email
@@ -20,30 +20,21 @@ package org.open.security.mf.authenticator.service;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.open.security.mf.authenticator.constant.Constants;
 import org.open.security.mf.authenticator.exception.OpenSecurityMfException;
 import org.open.security.mf.authenticator.model.EmailOTPProperties;
-import org.open.security.mf.authenticator.model.OTP;
-import org.open.security.mf.authenticator.model.SMTPProperties;
-import org.open.security.mf.authenticator.repository.OTPRepository;
+import org.open.security.mf.authenticator.repository.OTPStore;
+import org.open.security.mf.authenticator.util.EmailOTPDispatcher;
+import org.open.security.mf.authenticator.util.EmailOTPMessageFactory;
+import org.open.security.mf.authenticator.util.SMTPBatchSender;
+import org.open.security.mf.authenticator.util.StatelessEmailOTP;
 import org.open.security.mf.authenticator.util.Utils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import javax.mail.Authenticator;
-import javax.mail.Message;
 import javax.mail.MessagingException;
-import javax.mail.PasswordAuthentication;
-import javax.mail.Session;
-import javax.mail.Transport;
 import javax.mail.internet.AddressException;
-import javax.mail.internet.InternetAddress;
-import javax.mail.internet.MimeMessage;
-import java.util.Properties;
 import java.util.Random;
 
-import static org.open.security.mf.authenticator.constant.Constants.EMAIL_ADDRESS_PACE_HOLDER;
-import static org.open.security.mf.authenticator.constant.Constants.EMAIL_OTP_PLACE_HOLDER;
 import static org.open.security.mf.authenticator.constant.Constants.Error.OPEN_SEC_MF_001;
 import static org.open.security.mf.authenticator.constant.Constants.Error.OPEN_SEC_MF_002;
 import static org.open.security.mf.authenticator.constant.Constants.Error.OPEN_SEC_MF_003;
@@ -59,13 +50,22 @@ public class EmailOTPServiceImpl implements EmailOTPService {
     private final Log log = LogFactory.getLog(EmailOTPServiceImpl.class);
 
     @Autowired
-    private OTPRepository otpRepository;
+    private OTPStore otpStore;
 
     @Autowired
     private EmailOTPProperties emailOTPProperties;
 
     @Autowired
-    private SMTPProperties smtpProperties;
+    private EmailOTPMessageFactory emailOTPMessageFactory;
+
+    @Autowired
+    private SMTPBatchSender smtpBatchSender;
+
+    @Autowired
+    private EmailOTPDispatcher emailOTPDispatcher;
+
+    @Autowired
+    private StatelessEmailOTP statelessEmailOTP;
 
     @Override
     public String generateOTP(int length, char[] charset) {
@@ -81,63 +81,57 @@ public class EmailOTPServiceImpl implements EmailOTPService {
     @Override
     public void sendEmailOTP(String email) throws OpenSecurityMfException {
 
-        String otp = generateOTP(emailOTPProperties.getLength(), emailOTPProperties.getCharset().toCharArray());
-        // Persist generated OTP.
-        otpRepository.save(new OTP(email, otp, Constants.OTPStatus.ACTIVE.toString(), calculateExpiry()));
-        // Prepare email body.
-        String body = emailOTPProperties.getBody().replace(EMAIL_OTP_PLACE_HOLDER, otp);
-        body = body.replace(EMAIL_ADDRESS_PACE_HOLDER, email);
-        sendMail(email, emailOTPProperties.getSubject(), body);
+        String otp;
+        if (statelessEmailOTP.isEnabled()) {
+            // Derived from the server key, nothing to persist.
+            otp = statelessEmailOTP.generate(email);
+        } else {
+            long now = System.currentTimeMillis();
+            int resendWindow = emailOTPProperties.getResendWindow();
+            // An OTP issued within the resend window is mailed again rather than replaced, so a mail of it that
+            // did arrive stays valid, and one that failed or was rejected is retried.
+            String active = resendWindow > 0 ? otpStore.findActive(email,
+                    now + (emailOTPProperties.getExpiry() - resendWindow) * 1000L) : null;
+            if (active != null) {
+                otp = active;
+            } else {
+                otp = generateOTP(emailOTPProperties.getLength(), emailOTPProperties.getCharset().toCharArray());
+                // Persist generated OTP, revoking the ones sent before.
+                otpStore.issue(email, otp, calculateExpiry());
+            }
+        }
+        if (emailOTPProperties.isAsyncEnabled()) {
+            emailOTPDispatcher.dispatch(email, () -> sendMail(email, otp));
+        } else {
+            sendMail(email, otp);
+        }
     }
 
     @Override
     public boolean validateOTP(String otp, String email) throws OpenSecurityMfException {
 
-        OTP otpEntity = otpRepository.findByOTP(otp, email);
-        // Invalid OTP.
-        if (otpEntity == null) {
-            throw Utils.handleException(OPEN_SEC_MF_002, null);
-        }
-        // Expired OTP.
-        if (System.currentTimeMillis() > otpEntity.getExpiryTime()) {
-            throw Utils.handleException(OPEN_SEC_MF_003, null);
-        }
-        // Used OTP.
-        if (Constants.OTPStatus.USED.toString().equals(otpEntity.getStatus())) {
-            throw Utils.handleException(OPEN_SEC_MF_004, null);
+        if (statelessEmailOTP.isEnabled()) {
+            return statelessEmailOTP.validate(otp, email);
         }
-        // Revoked OTP.
-        if (Constants.OTPStatus.REVOKED.toString().equals(otpEntity.getStatus())) {
-            throw Utils.handleException(OPEN_SEC_MF_005, null);
+        switch (otpStore.consume(otp, email, System.currentTimeMillis())) {
+            case VALID:
+                return true;
+            case EXPIRED:
+                throw Utils.handleException(OPEN_SEC_MF_003, null);
+            case USED:
+                throw Utils.handleException(OPEN_SEC_MF_004, null);
+            case REVOKED:
+                throw Utils.handleException(OPEN_SEC_MF_005, null);
+            default:
+                throw Utils.handleException(OPEN_SEC_MF_002, null);
         }
-        return true;
     }
 
-    private void sendMail(String receiver, String subject, String body) throws OpenSecurityMfException {
-
-        // Set SMTP server configurations.
-        Properties prop = new Properties();
-        prop.put("mail.smtp.auth", smtpProperties.isAuth());
-        prop.put("mail.smtp.starttls.enable", smtpProperties.isStarttls());
-        prop.put("mail.smtp.host", smtpProperties.getHost());
-        prop.put("mail.smtp.port", smtpProperties.getPort());
-
-        // Whether the SMTP server requires authentication or not.
-        Session session = smtpProperties.isAuth() ? Session.getInstance(prop, new Authenticator() {
-            @Override
-            protected PasswordAuthentication getPasswordAuthentication() {
-                return new PasswordAuthentication(smtpProperties.getUsername(), smtpProperties.getPassword());
-            }
-        }) : Session.getInstance(prop);
+    private void sendMail(String receiver, String otp) throws OpenSecurityMfException {
 
-        // Send email
+        // Send email over a pooled SMTP connection.
         try {
-            Message message = new MimeMessage(session);
-            message.setFrom(new InternetAddress(smtpProperties.getUsername()));
-            message.setRecipient(Message.RecipientType.TO, new InternetAddress(receiver));
-            message.setSubject(subject);
-            message.setText(body);
-            Transport.send(message);
+            smtpBatchSender.send(emailOTPMessageFactory.createMessage(receiver, otp));
         } catch (AddressException e) {
             log.error("Error while sending the email to : " + receiver);
             throw Utils.handleException(OPEN_SEC_MF_001, receiver, e);
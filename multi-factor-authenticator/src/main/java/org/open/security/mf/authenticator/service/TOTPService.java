@@ -18,7 +18,14 @@
 
 package org.open.security.mf.authenticator.service;
 
+import org.open.security.mf.authenticator.constant.Constants.TOTPValidationStatus;
 import org.open.security.mf.authenticator.exception.OpenSecurityMfException;
+import org.open.security.mf.authenticator.model.TOTPValidationRequest;
+
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * This interface defines a set of functions to provide TOTP authentication.
@@ -34,6 +41,32 @@ public interface TOTPService {
      */
     String generateSecret() throws OpenSecurityMfException;
 
+    /**
+     * Generate the given number of secret keys, lazily, in bulk.
+     *
+     * @param count number of secrets, not negative
+     * @return stream of secrets
+     */
+    Stream<String> generateSecrets(long count);
+
+    /**
+     * Generate the given number of secret keys in bulk and write them to the stream, one per line.
+     *
+     * @param count number of secrets, not negative
+     * @param out
+     * @throws OpenSecurityMfException
+     */
+    void generateSecrets(long count, OutputStream out) throws OpenSecurityMfException;
+
+    /**
+     * Generate the given number of secret keys in bulk and write them to the channel, one per line.
+     *
+     * @param count number of secrets, not negative
+     * @param channel
+     * @throws OpenSecurityMfException
+     */
+    void generateSecrets(long count, WritableByteChannel channel) throws OpenSecurityMfException;
+
     /**
      * Validates a given code token against its secret.
      *
@@ -43,4 +76,35 @@ public interface TOTPService {
      * @throws OpenSecurityMfException
      */
     boolean validateCode(String secret, int code) throws OpenSecurityMfException;
+
+    /**
+     * Validates a given code token against its secret, using the code parameters of the given profile.
+     *
+     * @param profile
+     * @param secret
+     * @param code
+     * @return
+     * @throws OpenSecurityMfException
+     */
+    boolean validateCode(String profile, String secret, int code) throws OpenSecurityMfException;
+
+    /**
+     * Validates many codes against their secrets, in parallel. Requests sharing a secret are validated together,
+     * so the secret is decoded and keyed once. Failures are reported per request instead of being thrown.
+     *
+     * @param requests
+     * @return the status of each request, in request order.
+     */
+    TOTPValidationStatus[] validateCodes(List<TOTPValidationRequest> requests);
+
+    /**
+     * Validates many codes against their secrets in parallel, using the code parameters of the given profile.
+     *
+     * @param profile
+     * @param requests
+     * @return the status of each request, in request order.
+     * @throws OpenSecurityMfException
+     */
+    TOTPValidationStatus[] validateCodes(String profile, List<TOTPValidationRequest> requests)
+            throws OpenSecurityMfException;
 }
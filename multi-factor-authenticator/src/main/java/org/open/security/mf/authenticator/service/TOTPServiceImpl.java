@@ -18,15 +18,32 @@
 
 package org.open.security.mf.authenticator.service;
 
+import org.open.security.mf.authenticator.constant.Constants.TOTPValidationStatus;
 import org.open.security.mf.authenticator.exception.OpenSecurityMfException;
+import org.open.security.mf.authenticator.model.TOTPProperties;
+import org.open.security.mf.authenticator.model.TOTPValidationRequest;
+import org.open.security.mf.authenticator.util.TOTPEngine;
 import org.open.security.mf.authenticator.util.TOTPUtils;
 import org.open.security.mf.authenticator.util.Utils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.util.Date;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Stream;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import static org.open.security.mf.authenticator.constant.Constants.Error.OPEN_SEC_MF_010;
+import static org.open.security.mf.authenticator.constant.Constants.Error.OPEN_SEC_MF_013;
 
 /**
  * This class implements the {@link TOTPService} interface.
@@ -34,22 +51,181 @@ import static org.open.security.mf.authenticator.constant.Constants.Error.OPEN_S
 @Service
 public class TOTPServiceImpl implements TOTPService {
 
+    // Number of secrets validated by a single fork-join task before it stops splitting.
+    private static final int SECRETS_PER_TASK = 8;
+
     @Autowired
     TOTPUtils totpUtils;
 
+    @Autowired
+    TOTPProperties totpProperties;
+
+    private ForkJoinPool batchPool;
+
+    @PostConstruct
+    public void init() {
+
+        int parallelism = totpProperties.getBatchParallelism() > 0 ? totpProperties.getBatchParallelism()
+                : Runtime.getRuntime().availableProcessors();
+        batchPool = new ForkJoinPool(parallelism);
+    }
+
+    @PreDestroy
+    public void destroy() {
+
+        batchPool.shutdown();
+    }
+
     @Override
     public String generateSecret() throws OpenSecurityMfException {
 
         return totpUtils.createCredentials();
     }
 
+    @Override
+    public Stream<String> generateSecrets(long count) {
+
+        return totpUtils.streamSecrets(count);
+    }
+
+    @Override
+    public void generateSecrets(long count, OutputStream out) throws OpenSecurityMfException {
+
+        try {
+            totpUtils.writeSecrets(count, out);
+        } catch (IOException e) {
+            throw Utils.handleException(OPEN_SEC_MF_013, null, e);
+        }
+    }
+
+    @Override
+    public void generateSecrets(long count, WritableByteChannel channel) throws OpenSecurityMfException {
+
+        try {
+            totpUtils.writeSecrets(count, channel);
+        } catch (IOException e) {
+            throw Utils.handleException(OPEN_SEC_MF_013, null, e);
+        }
+    }
+
     @Override
     public boolean validateCode(String secret, int code) throws OpenSecurityMfException {
 
         if (secret == null) {
             throw Utils.handleException(OPEN_SEC_MF_010, "Secret null");
         }
-        return (code > 0 && code < totpUtils.getKeyModulus()) && totpUtils
-                .checkCode(secret, code, (new Date()).getTime());
+        return validateCode(totpUtils.getEngine(), secret, code);
+    }
+
+    @Override
+    public boolean validateCode(String profile, String secret, int code) throws OpenSecurityMfException {
+
+        if (secret == null) {
+            throw Utils.handleException(OPEN_SEC_MF_010, "Secret null");
+        }
+        return validateCode(totpUtils.getEngine(profile), secret, code);
+    }
+
+    private boolean validateCode(TOTPEngine engine, String secret, int code) throws OpenSecurityMfException {
+
+        return (code > 0 && code < engine.getKeyModulus()) && engine
+                .checkCode(secret, code, System.currentTimeMillis());
+    }
+
+    @Override
+    public TOTPValidationStatus[] validateCodes(List<TOTPValidationRequest> requests) {
+
+        return validateCodes(totpUtils.getEngine(), requests);
+    }
+
+    @Override
+    public TOTPValidationStatus[] validateCodes(String profile, List<TOTPValidationRequest> requests)
+            throws OpenSecurityMfException {
+
+        return validateCodes(totpUtils.getEngine(profile), requests);
+    }
+
+    private TOTPValidationStatus[] validateCodes(TOTPEngine engine, List<TOTPValidationRequest> requests) {
+
+        TOTPValidationStatus[] results = new TOTPValidationStatus[requests.size()];
+        // Group the requests by secret, so each secret is decoded and keyed once.
+        Map<String, List<Integer>> requestsBySecret = new LinkedHashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            TOTPValidationRequest request = requests.get(i);
+            if (request == null || request.getSecret() == null) {
+                results[i] = TOTPValidationStatus.ERROR;
+            } else if (request.getCode() <= 0 || request.getCode() >= engine.getKeyModulus()) {
+                results[i] = TOTPValidationStatus.INVALID;
+            } else {
+                requestsBySecret.computeIfAbsent(request.getSecret(), secret -> new ArrayList<>()).add(i);
+            }
+        }
+        List<List<Integer>> groups = new ArrayList<>(requestsBySecret.values());
+        batchPool.invoke(new BatchValidationTask(engine, requests, groups, 0, groups.size(), results));
+        return results;
+    }
+
+    /**
+     * Validates a range of secret groups, splitting the range across the pool until it is small enough.
+     */
+    private class BatchValidationTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 4611254718529301042L;
+        private final TOTPEngine engine;
+        private final List<TOTPValidationRequest> requests;
+        private final List<List<Integer>> groups;
+        private final int start;
+        private final int end;
+        private final TOTPValidationStatus[] results;
+
+        BatchValidationTask(TOTPEngine engine, List<TOTPValidationRequest> requests, List<List<Integer>> groups,
+                            int start, int end, TOTPValidationStatus[] results) {
+
+            this.engine = engine;
+            this.requests = requests;
+            this.groups = groups;
+            this.start = start;
+            this.end = end;
+            this.results = results;
+        }
+
+        @Override
+        protected void compute() {
+
+            if (end - start > SECRETS_PER_TASK) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new BatchValidationTask(engine, requests, groups, start, middle, results),
+                        new BatchValidationTask(engine, requests, groups, middle, end, results));
+                return;
+            }
+            for (int g = start; g < end; g++) {
+                validateGroup(groups.get(g));
+            }
+        }
+
+        private void validateGroup(List<Integer> group) {
+
+            int count = group.size();
+            long[] codes = new long[count];
+            long[] timestamps = new long[count];
+            boolean[] valid = new boolean[count];
+            for (int i = 0; i < count; i++) {
+                TOTPValidationRequest request = requests.get(group.get(i));
+                codes[i] = request.getCode();
+                timestamps[i] = request.getTimestamp();
+            }
+            String secret = requests.get(group.get(0)).getSecret();
+            try {
+                engine.checkCodes(secret, codes, timestamps, count, valid);
+                for (int i = 0; i < count; i++) {
+                    results[group.get(i)] = valid[i] ? TOTPValidationStatus.VALID : TOTPValidationStatus.INVALID;
+                }
+            } catch (OpenSecurityMfException | IllegalArgumentException e) {
+                // Malformed secret, affects every request of the group only.
+                for (Integer index : group) {
+                    results[index] = TOTPValidationStatus.ERROR;
+                }
+            }
+        }
     }
 }
@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.open.security.mf.authenticator.exception.OpenSecurityMfException;
+import org.open.security.mf.authenticator.model.EmailOTPProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PreDestroy;
+
+import static org.open.security.mf.authenticator.constant.Constants.EMAIL_OTP_REJECTION_CALLER_RUNS;
+import static org.open.security.mf.authenticator.constant.Constants.EMAIL_OTP_REJECTION_FAIL;
+import static org.open.security.mf.authenticator.constant.Constants.Error.OPEN_SEC_MF_014;
+import static org.open.security.mf.authenticator.constant.Constants.Error.OPEN_SEC_MF_015;
+
+/**
+ * Sends email OTPs off the caller's thread through a bounded queue drained by a fixed set of workers.
+ * <p>
+ * A failed send is retried with exponential backoff up to the configured number of attempts. When the queue is
+ * full the "fail" policy rejects the message with {@code OPEN_SEC_MF_014} and the "caller-runs" policy sends it on
+ * the caller's thread. On shutdown queued and pending retries are sent without further backoff until the shutdown
+ * timeout elapses.
+ */
+@Component
+public class EmailOTPDispatcher {
+
+    private static final Log log = LogFactory.getLog(EmailOTPDispatcher.class);
+
+    private final EmailOTPProperties emailOTPProperties;
+    private final boolean callerRuns;
+    private ThreadPoolExecutor workerExecutor;
+    private ScheduledExecutorService retryExecutor;
+    private volatile boolean draining;
+    private final Set<Dispatch> pendingRetries = ConcurrentHashMap.newKeySet();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public EmailOTPDispatcher(EmailOTPProperties emailOTPProperties) throws OpenSecurityMfException {
+
+        this.emailOTPProperties = emailOTPProperties;
+        String policy = emailOTPProperties.getAsyncRejectionPolicy();
+        if (!EMAIL_OTP_REJECTION_FAIL.equalsIgnoreCase(policy)
+                && !EMAIL_OTP_REJECTION_CALLER_RUNS.equalsIgnoreCase(policy)) {
+            throw Utils.handleException(OPEN_SEC_MF_015, "async-rejection-policy=" + policy);
+        }
+        callerRuns = EMAIL_OTP_REJECTION_CALLER_RUNS.equalsIgnoreCase(policy);
+        if (emailOTPProperties.isAsyncEnabled()) {
+            int workers = emailOTPProperties.getAsyncWorkers();
+            workerExecutor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(emailOTPProperties.getAsyncQueueCapacity()),
+                    threadFactory("email-otp-dispatch"), new ThreadPoolExecutor.AbortPolicy());
+            retryExecutor = Executors.newSingleThreadScheduledExecutor(threadFactory("email-otp-retry"));
+        }
+    }
+
+    /**
+     * Queue the send and return right away.
+     *
+     * @param receiver email address the message is sent to
+     * @param task     sends the message
+     * @throws OpenSecurityMfException if the queue is full under the "fail" policy, or if the message is sent on
+     *                                 the caller's thread and fails
+     */
+    public void dispatch(String receiver, DispatchTask task) throws OpenSecurityMfException {
+
+        try {
+            workerExecutor.execute(new Dispatch(receiver, task));
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            if (!callerRuns || draining) {
+                throw Utils.handleException(OPEN_SEC_MF_014, receiver, e);
+            }
+            task.send();
+            sent.increment();
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+
+        if (workerExecutor == null) {
+            return;
+        }
+        // Pending retries are handed back to the workers right away, new retries skip the backoff.
+        draining = true;
+        retryExecutor.shutdownNow();
+        for (Dispatch dispatch : pendingRetries) {
+            resubmit(dispatch);
+        }
+        long deadline = System.currentTimeMillis() + emailOTPProperties.getAsyncShutdownTimeoutMillis();
+        try {
+            retryExecutor.awaitTermination(remaining(deadline), TimeUnit.MILLISECONDS);
+            workerExecutor.shutdown();
+            if (!workerExecutor.awaitTermination(remaining(deadline), TimeUnit.MILLISECONDS)) {
+                int dropped = workerExecutor.shutdownNow().size();
+                log.warn("Email OTP dispatch didn't drain in time, dropped " + dropped + " queued messages.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            workerExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return number of messages waiting in the queue
+     */
+    public int getQueueSize() {
+
+        return workerExecutor == null ? 0 : workerExecutor.getQueue().size();
+    }
+
+    /**
+     * @return number of messages sent
+     */
+    public long getSent() {
+
+        return sent.sum();
+    }
+
+    /**
+     * @return number of retries scheduled after a failed send
+     */
+    public long getRetried() {
+
+        return retried.sum();
+    }
+
+    /**
+     * @return number of messages given up on after the last attempt
+     */
+    public long getFailed() {
+
+        return failed.sum();
+    }
+
+    /**
+     * @return number of messages that found the queue full
+     */
+    public long getRejected() {
+
+        return rejected.sum();
+    }
+
+    private void retry(Dispatch dispatch) {
+
+        if (draining) {
+            dispatch.run();
+            return;
+        }
+        // Capped shift, a large attempt count would otherwise overflow the backoff.
+        long backoff = Math.min(emailOTPProperties.getAsyncInitialBackoffMillis()
+                << Math.min(dispatch.attempts - 1, 30), emailOTPProperties.getAsyncMaxBackoffMillis());
+        retried.increment();
+        pendingRetries.add(dispatch);
+        try {
+            retryExecutor.schedule(() -> resubmit(dispatch), backoff, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shutdown started in between, the drain resubmits it.
+            resubmit(dispatch);
+        }
+    }
+
+    private void resubmit(Dispatch dispatch) {
+
+        // Either the scheduled retry or the drain resubmits it, whichever comes first.
+        if (!pendingRetries.remove(dispatch)) {
+            return;
+        }
+        try {
+            workerExecutor.execute(dispatch);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            failed.increment();
+            log.error("Email OTP dispatch queue is full, dropped the retry for : " + dispatch.receiver);
+        }
+    }
+
+    private static long remaining(long deadline) {
+
+        return Math.max(0, deadline - System.currentTimeMillis());
+    }
+
+    private static ThreadFactory threadFactory(String name) {
+
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Sends a single message.
+     */
+    @FunctionalInterface
+    public interface DispatchTask {
+
+        void send() throws OpenSecurityMfException;
+    }
+
+    /**
+     * A queued message and the number of attempts made so far.
+     */
+    private final class Dispatch implements Runnable {
+
+        private final String receiver;
+        private final DispatchTask task;
+        private int attempts;
+
+        private Dispatch(String receiver, DispatchTask task) {
+
+            this.receiver = receiver;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+
+            attempts++;
+            try {
+                task.send();
+                sent.increment();
+            } catch (OpenSecurityMfException | RuntimeException e) {
+                if (attempts < emailOTPProperties.getAsyncMaxAttempts()) {
+                    retry(this);
+                } else {
+                    failed.increment();
+                    log.error("Giving up sending the email OTP to : " + receiver + " after " + attempts
+                            + " attempts.", e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.util;
+
+import org.apache.commons.lang3.StringUtils;
+import org.open.security.mf.authenticator.exception.OpenSecurityMfException;
+import org.open.security.mf.authenticator.model.EmailOTPProperties;
+import org.open.security.mf.authenticator.model.SMTPProperties;
+import org.springframework.stereotype.Component;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.AddressException;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeBodyPart;
+import javax.mail.internet.MimeMessage;
+import javax.mail.internet.MimeMultipart;
+import javax.mail.internet.MimeUtility;
+
+import static org.open.security.mf.authenticator.constant.Constants.EMAIL_ADDRESS_PACE_HOLDER;
+import static org.open.security.mf.authenticator.constant.Constants.EMAIL_OTP_PLACE_HOLDER;
+import static org.open.security.mf.authenticator.constant.Constants.Error.OPEN_SEC_MF_015;
+
+/**
+ * Builds email OTP messages from templates compiled at startup.
+ * <p>
+ * The from address and the encoded subject are resolved once and shared by every message. When an HTML body is
+ * configured the message is a multipart/alternative with the plain text and the HTML part, and the values
+ * substituted into the HTML part are HTML escaped.
+ */
+@Component
+public class EmailOTPMessageFactory {
+
+    private static final String CHARSET = StandardCharsets.UTF_8.name();
+
+    private final Session session;
+    private final InternetAddress[] from;
+    private final String subject;
+    private final EmailTemplate body;
+    private final EmailTemplate htmlBody;
+
+    public EmailOTPMessageFactory(EmailOTPProperties emailOTPProperties, SMTPProperties smtpProperties,
+                                  SMTPTransportPool smtpTransportPool) throws OpenSecurityMfException {
+
+        this.session = smtpTransportPool.getSession();
+        try {
+            this.from = new InternetAddress[]{new InternetAddress(smtpProperties.getUsername())};
+        } catch (AddressException e) {
+            throw Utils.handleException(OPEN_SEC_MF_015, "smtp.username=" + smtpProperties.getUsername(), e);
+        }
+        try {
+            this.subject = MimeUtility.fold(9, MimeUtility.encodeText(emailOTPProperties.getSubject(), CHARSET, null));
+        } catch (UnsupportedEncodingException e) {
+            throw Utils.handleException(OPEN_SEC_MF_015, "email.otp.subject", e);
+        }
+        this.body = EmailTemplate.compile(emailOTPProperties.getBody(), EMAIL_OTP_PLACE_HOLDER,
+                EMAIL_ADDRESS_PACE_HOLDER);
+        this.htmlBody = StringUtils.isBlank(emailOTPProperties.getHtmlBody()) ? null : EmailTemplate.compile(
+                emailOTPProperties.getHtmlBody(), EMAIL_OTP_PLACE_HOLDER, EMAIL_ADDRESS_PACE_HOLDER);
+    }
+
+    /**
+     * Build the message carrying the OTP.
+     *
+     * @param email receiver email address
+     * @param otp   OTP
+     * @return message ready to send
+     * @throws MessagingException if the receiver address is invalid or the message couldn't be built
+     */
+    public Message createMessage(String email, String otp) throws MessagingException {
+
+        MimeMessage message = new MimeMessage(session);
+        message.addFrom(from);
+        message.setRecipient(Message.RecipientType.TO, new InternetAddress(email));
+        // Already encoded and folded.
+        message.setHeader("Subject", subject);
+        String text = body.render(otp, email);
+        if (htmlBody == null) {
+            message.setText(text, CHARSET);
+        } else {
+            MimeBodyPart textPart = new MimeBodyPart();
+            textPart.setText(text, CHARSET);
+            MimeBodyPart htmlPart = new MimeBodyPart();
+            htmlPart.setText(htmlBody.renderHtml(otp, email), CHARSET, "html");
+            message.setContent(new MimeMultipart("alternative", textPart, htmlPart));
+        }
+        return message;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.open.security.mf.authenticator.model.EmailOTPProperties;
+import org.open.security.mf.authenticator.repository.OTPStore;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+/**
+ * Deletes email OTPs that expired longer than the retention ago, used and revoked ones included.
+ * <p>
+ * Every purge interval a sweep deletes in batches of the batch size, each in its own transaction, until a batch
+ * comes back short or the maximum number of batches per sweep is reached. The rest is left for the next sweep, so
+ * a large backlog never holds locks for long.
+ * <p>
+ * Purging is off by default. A purged OTP validates as invalid rather than expired, so the retention should cover
+ * the time users may still try an expired OTP.
+ */
+@Component
+public class EmailOTPPurger {
+
+    private static final Log log = LogFactory.getLog(EmailOTPPurger.class);
+
+    private final OTPStore otpStore;
+    private final EmailOTPProperties emailOTPProperties;
+    private ScheduledExecutorService purgeExecutor;
+    private final LongAdder rowsPurged = new LongAdder();
+    private final LongAdder sweeps = new LongAdder();
+    private final AtomicLong lastSweepMillis = new AtomicLong();
+    private final AtomicLong maxSweepMillis = new AtomicLong();
+
+    public EmailOTPPurger(OTPStore otpStore, EmailOTPProperties emailOTPProperties) {
+
+        this.otpStore = otpStore;
+        this.emailOTPProperties = emailOTPProperties;
+    }
+
+    @PostConstruct
+    public void init() {
+
+        if (!emailOTPProperties.isPurgeEnabled()) {
+            return;
+        }
+        purgeExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "email-otp-purge");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = emailOTPProperties.getPurgeIntervalMillis();
+        purgeExecutor.scheduleWithFixedDelay(this::sweep, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+
+        if (purgeExecutor != null) {
+            purgeExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Run a single sweep.
+     *
+     * @return number of rows deleted
+     */
+    public int sweep() {
+
+        long start = System.currentTimeMillis();
+        long cutoff = start - emailOTPProperties.getPurgeRetentionMillis();
+        int batchSize = emailOTPProperties.getPurgeBatchSize();
+        int purged = 0;
+        try {
+            for (int batch = 0; batch < emailOTPProperties.getPurgeMaxBatches(); batch++) {
+                int deleted = otpStore.purgeExpired(cutoff, batchSize);
+                purged += deleted;
+                rowsPurged.add(deleted);
+                if (deleted < batchSize) {
+                    break;
+                }
+            }
+        } catch (RuntimeException e) {
+            // Keep the schedule alive, the next sweep picks up where this one failed.
+            log.error("Error while purging expired email OTPs.", e);
+        }
+        long duration = System.currentTimeMillis() - start;
+        sweeps.increment();
+        lastSweepMillis.set(duration);
+        maxSweepMillis.accumulateAndGet(duration, Math::max);
+        if (purged > 0 && log.isDebugEnabled()) {
+            log.debug("Purged " + purged + " expired email OTPs in " + duration + " ms.");
+        }
+        return purged;
+    }
+
+    /**
+     * @return number of rows deleted since start
+     */
+    public long getRowsPurged() {
+
+        return rowsPurged.sum();
+    }
+
+    /**
+     * @return number of sweeps run since start
+     */
+    public long getSweeps() {
+
+        return sweeps.sum();
+    }
+
+    /**
+     * @return duration of the last sweep in milliseconds
+     */
+    public long getLastSweepMillis() {
+
+        return lastSweepMillis.get();
+    }
+
+    /**
+     * @return duration of the longest sweep in milliseconds
+     */
+    public long getMaxSweepMillis() {
+
+        return maxSweepMillis.get();
+    }
+}
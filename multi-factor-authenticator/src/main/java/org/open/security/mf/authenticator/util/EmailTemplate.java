@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Email template parsed once into literal and placeholder segments.
+ * <p>
+ * Rendering appends the segments to a builder sized from the literal length and the values, so the template is
+ * not rescanned and no intermediate strings are created.
+ */
+public final class EmailTemplate {
+
+    private final String[] literals;
+    // Index of the value rendered after each literal, -1 after the last literal.
+    private final int[] placeholders;
+    private final int literalLength;
+
+    private EmailTemplate(String[] literals, int[] placeholders, int literalLength) {
+
+        this.literals = literals;
+        this.placeholders = placeholders;
+        this.literalLength = literalLength;
+    }
+
+    /**
+     * Parse the template.
+     *
+     * @param template     template text
+     * @param placeholders placeholders, values are passed to {@link #render(String...)} in the same order
+     * @return the compiled template
+     */
+    public static EmailTemplate compile(String template, String... placeholders) {
+
+        List<String> literals = new ArrayList<>();
+        List<Integer> indexes = new ArrayList<>();
+        int literalLength = 0;
+        int start = 0;
+        while (true) {
+            // Earliest placeholder from the current position, the longest one wins a tie.
+            int match = -1;
+            int matchIndex = -1;
+            for (int i = 0; i < placeholders.length; i++) {
+                int index = template.indexOf(placeholders[i], start);
+                if (index >= 0 && (matchIndex < 0 || index < matchIndex
+                        || index == matchIndex && placeholders[i].length() > placeholders[match].length())) {
+                    match = i;
+                    matchIndex = index;
+                }
+            }
+            String literal = template.substring(start, matchIndex < 0 ? template.length() : matchIndex);
+            literals.add(literal);
+            literalLength += literal.length();
+            if (matchIndex < 0) {
+                indexes.add(-1);
+                break;
+            }
+            indexes.add(match);
+            start = matchIndex + placeholders[match].length();
+        }
+        int[] placeholderIndexes = new int[indexes.size()];
+        for (int i = 0; i < placeholderIndexes.length; i++) {
+            placeholderIndexes[i] = indexes.get(i);
+        }
+        return new EmailTemplate(literals.toArray(new String[0]), placeholderIndexes, literalLength);
+    }
+
+    /**
+     * @param values placeholder values in the order the placeholders were given at compile time
+     * @return the rendered text
+     */
+    public String render(String... values) {
+
+        StringBuilder builder = new StringBuilder(renderedLength(values));
+        for (int i = 0; i < literals.length; i++) {
+            builder.append(literals[i]);
+            if (placeholders[i] >= 0) {
+                builder.append(values[placeholders[i]]);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Render an HTML template. The literals are markup and are copied as is, while the values are user supplied
+     * text and are HTML escaped, so they can't inject markup.
+     *
+     * @param values placeholder values in the order the placeholders were given at compile time
+     * @return the rendered HTML
+     */
+    public String renderHtml(String... values) {
+
+        // Sized for values that need no escaping, the builder grows otherwise.
+        StringBuilder builder = new StringBuilder(renderedLength(values));
+        for (int i = 0; i < literals.length; i++) {
+            builder.append(literals[i]);
+            if (placeholders[i] >= 0) {
+                appendHtmlEscaped(builder, values[placeholders[i]]);
+            }
+        }
+        return builder.toString();
+    }
+
+    private int renderedLength(String[] values) {
+
+        int length = literalLength;
+        for (int placeholder : placeholders) {
+            if (placeholder >= 0) {
+                length += values[placeholder].length();
+            }
+        }
+        return length;
+    }
+
+    private static void appendHtmlEscaped(StringBuilder builder, String value) {
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&':
+                    builder.append("&amp;");
+                    break;
+                case '<':
+                    builder.append("&lt;");
+                    break;
+                case '>':
+                    builder.append("&gt;");
+                    break;
+                case '"':
+                    builder.append("&quot;");
+                    break;
+                case '\'':
+                    builder.append("&#39;");
+                    break;
+                default:
+                    builder.append(c);
+            }
+        }
+    }
+}
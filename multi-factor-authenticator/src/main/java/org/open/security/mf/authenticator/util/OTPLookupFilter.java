@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Counting Bloom filter over the (email, OTP) pairs issued and not yet expired, so lookups of pairs that were
+ * never issued can be rejected without reaching the store.
+ * <p>
+ * Counters are 4 bits, sixteen to a long, updated with CAS. A counter that reaches 15 stays there, so removals
+ * can never cause a false negative. The number of counters and hash functions follow from the expected number of
+ * live OTPs and the false positive probability. Pairs are removed in issue order once their expiry time is
+ * reached by {@link #expire(long)}, so pairs that were used or revoked still reach the store until then and report
+ * why. Callers that pass a time behind the current one keep expired pairs for that long as well.
+ * <p>
+ * The issued pairs are kept in a ring of the expected number of live OTPs, so the memory used is fixed. A pair
+ * issued while the ring is full can't be removed later and isn't added; every lookup is let through instead until
+ * it has expired.
+ */
+public class OTPLookupFilter {
+
+    private static final Log log = LogFactory.getLog(OTPLookupFilter.class);
+
+    private static final int MAX_COUNT = 15;
+    // Hash, step and expiry time of each issued pair.
+    private static final int ISSUED_SIZE = 24;
+
+    private final AtomicLongArray counters;
+    private final long counterCount;
+    private final int hashCount;
+    // Ring of the issued pairs in expiry order, to remove them once expired.
+    private final long[] issuedHashes;
+    private final long[] issuedSteps;
+    private final long[] issuedExpiryTimes;
+    private final ReentrantLock issuedLock = new ReentrantLock();
+    private int issuedHead;
+    private int issuedCount;
+    // Latest expiry of the pairs not added while the ring was full, 0 when all were added.
+    private volatile long saturatedUntil;
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+    private final LongAdder overflows = new LongAdder();
+
+    /**
+     * @param expectedInsertions expected number of OTPs live at the same time
+     * @param fpp                false positive probability at the expected number of OTPs
+     */
+    public OTPLookupFilter(long expectedInsertions, double fpp) {
+
+        long n = Math.max(1, expectedInsertions);
+        long m = Math.max(64, (long) Math.ceil(-n * Math.log(fpp) / (Math.log(2) * Math.log(2))));
+        // Rounded up to whole longs.
+        this.counters = new AtomicLongArray((int) ((m + 15) / 16));
+        this.counterCount = counters.length() * 16L;
+        this.hashCount = Math.max(1, (int) Math.round((double) counterCount / n * Math.log(2)));
+        int capacity = (int) Math.min(n, Integer.MAX_VALUE - 8);
+        this.issuedHashes = new long[capacity];
+        this.issuedSteps = new long[capacity];
+        this.issuedExpiryTimes = new long[capacity];
+    }
+
+    /**
+     * Add a newly issued pair.
+     *
+     * @param email      email address
+     * @param otp        OTP
+     * @param expiryTime time the OTP expires at
+     */
+    public void add(String email, String otp, long expiryTime) {
+
+        long hash = hash(email, otp, 0xcbf29ce484222325L);
+        long step = hash(email, otp, 0x9e3779b97f4a7c15L) | 1;
+        issuedLock.lock();
+        try {
+            int capacity = issuedHashes.length;
+            if (issuedCount == capacity) {
+                if (saturatedUntil == 0) {
+                    log.warn("Email OTP lookup filter is full with " + capacity + " unexpired OTPs, letting all "
+                            + "lookups through until the OTPs issued since have expired. Consider increasing "
+                            + "email.otp.filter-expected-insertions.");
+                }
+                saturatedUntil = Math.max(saturatedUntil, expiryTime);
+                overflows.increment();
+                return;
+            }
+            for (int i = 0; i < hashCount; i++) {
+                increment(index(hash, step, i));
+            }
+            int tail = (int) (((long) issuedHead + issuedCount) % capacity);
+            issuedHashes[tail] = hash;
+            issuedSteps[tail] = step;
+            issuedExpiryTimes[tail] = expiryTime;
+            issuedCount++;
+        } finally {
+            issuedLock.unlock();
+        }
+    }
+
+    /**
+     * @param email email address
+     * @param otp   OTP
+     * @return false if the pair was definitely not issued or has expired, true if it may have been issued
+     */
+    public boolean mightContain(String email, String otp) {
+
+        lookups.increment();
+        if (saturatedUntil != 0) {
+            return true;
+        }
+        long hash = hash(email, otp, 0xcbf29ce484222325L);
+        long step = hash(email, otp, 0x9e3779b97f4a7c15L) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            if (count(index(hash, step, i)) == 0) {
+                rejected.increment();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Record that a pair the filter let through wasn't found in the store.
+     */
+    public void falsePositive() {
+
+        falsePositives.increment();
+    }
+
+    /**
+     * Remove the pairs expired at the given time.
+     *
+     * @param now time the pairs must have expired at
+     * @return number of pairs removed
+     */
+    public int expire(long now) {
+
+        // Concurrent callers leave it to the one already removing.
+        if (!issuedLock.tryLock()) {
+            return 0;
+        }
+        try {
+            int removed = 0;
+            while (issuedCount > 0 && issuedExpiryTimes[issuedHead] <= now) {
+                for (int i = 0; i < hashCount; i++) {
+                    decrement(index(issuedHashes[issuedHead], issuedSteps[issuedHead], i));
+                }
+                issuedHead = issuedHead + 1 == issuedHashes.length ? 0 : issuedHead + 1;
+                issuedCount--;
+                removed++;
+            }
+            if (saturatedUntil != 0 && saturatedUntil <= now) {
+                saturatedUntil = 0;
+            }
+            return removed;
+        } finally {
+            issuedLock.unlock();
+        }
+    }
+
+    /**
+     * @return number of lookups
+     */
+    public long getLookups() {
+
+        return lookups.sum();
+    }
+
+    /**
+     * @return number of lookups rejected as definitely not issued
+     */
+    public long getRejected() {
+
+        return rejected.sum();
+    }
+
+    /**
+     * @return number of lookups let through that weren't found in the store
+     */
+    public long getFalsePositives() {
+
+        return falsePositives.sum();
+    }
+
+    /**
+     * @return number of issued pairs not added because the filter was full
+     */
+    public long getOverflows() {
+
+        return overflows.sum();
+    }
+
+    /**
+     * @return memory used by the counters and the issued pairs in bytes
+     */
+    public long getSizeInBytes() {
+
+        return counters.length() * 8L + (long) issuedHashes.length * ISSUED_SIZE;
+    }
+
+    private long index(long hash, long step, int i) {
+
+        return Math.floorMod(hash + i * step, counterCount);
+    }
+
+    private int count(long index) {
+
+        return (int) (counters.get((int) (index >>> 4)) >>> ((index & 15) << 2)) & MAX_COUNT;
+    }
+
+    private void increment(long index) {
+
+        int word = (int) (index >>> 4);
+        int shift = (int) (index & 15) << 2;
+        while (true) {
+            long value = counters.get(word);
+            long count = value >>> shift & MAX_COUNT;
+            if (count == MAX_COUNT || counters.compareAndSet(word, value, value + (1L << shift))) {
+                return;
+            }
+        }
+    }
+
+    private void decrement(long index) {
+
+        int word = (int) (index >>> 4);
+        int shift = (int) (index & 15) << 2;
+        while (true) {
+            long value = counters.get(word);
+            long count = value >>> shift & MAX_COUNT;
+            // Saturated counters no longer know their count and stay.
+            if (count == 0 || count == MAX_COUNT || counters.compareAndSet(word, value, value - (1L << shift))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a over the email, a separator and the OTP with the given offset basis, followed by a final mix.
+     */
+    private static long hash(String email, String otp, long basis) {
+
+        long hash = basis;
+        for (int i = 0; i < email.length(); i++) {
+            hash ^= email.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash *= 0x100000001b3L;
+        for (int i = 0; i < otp.length(); i++) {
+            hash ^= otp.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
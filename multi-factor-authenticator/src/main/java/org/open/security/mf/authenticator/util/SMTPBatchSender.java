@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.open.security.mf.authenticator.model.SMTPProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PreDestroy;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+
+/**
+ * Groups messages sent at about the same time and sends each group over a single pooled SMTP connection.
+ * <p>
+ * A sender thread takes the first queued message, then waits up to the linger time for more until the batch is
+ * full. Callers block until their message has been sent, so with async dispatch the workers' sends are what gets
+ * grouped. When batching is disabled, or after shutdown, messages go straight to the transport pool. On shutdown
+ * the senders send what is queued and stop; those still running after the shutdown timeout are interrupted.
+ */
+@Component
+public class SMTPBatchSender {
+
+    private static final Log log = LogFactory.getLog(SMTPBatchSender.class);
+
+    // Queued once per sender on shutdown, behind the messages still queued.
+    private static final PendingMessage SHUTDOWN = new PendingMessage(null);
+
+    private final SMTPTransportPool transportPool;
+    private final int batchSize;
+    private final long lingerNanos;
+    private final long shutdownTimeoutMillis;
+    private final LinkedBlockingQueue<PendingMessage> queue = new LinkedBlockingQueue<>();
+    private final List<Thread> senders = new ArrayList<>();
+    private volatile boolean running;
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedMessages = new LongAdder();
+
+    public SMTPBatchSender(SMTPTransportPool transportPool, SMTPProperties smtpProperties) {
+
+        this.transportPool = transportPool;
+        this.batchSize = smtpProperties.getBatchSize();
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(smtpProperties.getBatchLingerMillis());
+        this.shutdownTimeoutMillis = smtpProperties.getBatchShutdownTimeoutMillis();
+        if (smtpProperties.isBatchEnabled()) {
+            running = true;
+            for (int i = 0; i < smtpProperties.getBatchSenders(); i++) {
+                Thread sender = new Thread(this::sendBatches, "smtp-batch-sender-" + (i + 1));
+                sender.setDaemon(true);
+                sender.start();
+                senders.add(sender);
+            }
+        }
+    }
+
+    /**
+     * Send the message as part of the next batch and wait until it has been sent.
+     *
+     * @param message message to send
+     * @throws MessagingException if the message could not be sent
+     */
+    public void send(Message message) throws MessagingException {
+
+        if (!running) {
+            transportPool.send(message);
+            return;
+        }
+        PendingMessage pending = new PendingMessage(message);
+        queue.add(pending);
+        if (!running && queue.remove(pending)) {
+            // Shutdown started after the check above and the drain missed it.
+            transportPool.send(message);
+            return;
+        }
+        try {
+            pending.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessagingException("Interrupted while waiting for the message to be sent.", e);
+        } catch (ExecutionException e) {
+            throw (MessagingException) e.getCause();
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+
+        // New messages go straight to the pool, the senders send the queued ones and stop at their marker.
+        running = false;
+        for (int i = 0; i < senders.size(); i++) {
+            queue.add(SHUTDOWN);
+        }
+        long deadline = System.currentTimeMillis() + shutdownTimeoutMillis;
+        try {
+            for (Thread sender : senders) {
+                sender.join(Math.max(1, deadline - System.currentTimeMillis()));
+            }
+            for (Thread sender : senders) {
+                if (sender.isAlive()) {
+                    log.warn("SMTP batch sender " + sender.getName() + " didn't stop in time, interrupting it.");
+                    sender.interrupt();
+                    sender.join();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Whatever is left is sent by the pool directly.
+        List<PendingMessage> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        remaining.removeIf(pending -> pending == SHUTDOWN);
+        if (!remaining.isEmpty()) {
+            send(remaining);
+        }
+    }
+
+    /**
+     * @return number of batches sent
+     */
+    public long getBatches() {
+
+        return batches.sum();
+    }
+
+    /**
+     * @return number of messages sent in batches
+     */
+    public long getBatchedMessages() {
+
+        return batchedMessages.sum();
+    }
+
+    private void sendBatches() {
+
+        List<PendingMessage> batch = new ArrayList<>(batchSize);
+        while (true) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < batchSize && batch.get(batch.size() - 1) != SHUTDOWN) {
+                    if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    PendingMessage next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // Didn't stop within the shutdown timeout, send what was already taken.
+                Thread.currentThread().interrupt();
+            }
+            // Markers drained beyond this sender's own go back to the queue for the others.
+            int markers = 0;
+            for (int i = batch.size() - 1; i >= 0; i--) {
+                if (batch.get(i) == SHUTDOWN) {
+                    batch.remove(i);
+                    markers++;
+                }
+            }
+            for (int i = 1; i < markers; i++) {
+                queue.add(SHUTDOWN);
+            }
+            if (!batch.isEmpty()) {
+                send(batch);
+                batch.clear();
+            }
+            if (markers > 0 || Thread.currentThread().isInterrupted()) {
+                return;
+            }
+        }
+    }
+
+    private void send(List<PendingMessage> batch) {
+
+        List<Message> messages = new ArrayList<>(batch.size());
+        for (PendingMessage pending : batch) {
+            messages.add(pending.message);
+        }
+        MessagingException[] failures;
+        try {
+            failures = transportPool.sendAll(messages);
+        } catch (RuntimeException e) {
+            log.error("Error while sending a batch of " + batch.size() + " messages.", e);
+            for (PendingMessage pending : batch) {
+                pending.result.completeExceptionally(new MessagingException("Error while sending the batch.", e));
+            }
+            return;
+        }
+        batches.increment();
+        batchedMessages.add(batch.size());
+        for (int i = 0; i < failures.length; i++) {
+            if (failures[i] == null) {
+                batch.get(i).result.complete(null);
+            } else {
+                batch.get(i).result.completeExceptionally(failures[i]);
+            }
+        }
+    }
+
+    /**
+     * A queued message and the result its sender waits on.
+     */
+    private static final class PendingMessage {
+
+        private final Message message;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        private PendingMessage(Message message) {
+
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.open.security.mf.authenticator.model.SMTPProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.mail.Authenticator;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.PasswordAuthentication;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+
+/**
+ * Bounded pool of connected, and when required authenticated, SMTP transports shared across messages, so the TCP
+ * connection, STARTTLS and authentication happen once per connection instead of once per message.
+ * <p>
+ * Idle connections are reused most recently used first. Connections idle longer than the idle timeout are closed
+ * by a background eviction run, and connections idle longer than the validation interval are checked with a NOOP
+ * before reuse. A send that fails on a broken connection is retried once on a new connection.
+ */
+@Component
+public class SMTPTransportPool {
+
+    private static final Log log = LogFactory.getLog(SMTPTransportPool.class);
+
+    @Autowired
+    private SMTPProperties smtpProperties;
+
+    private Session session;
+    private Semaphore permits;
+    private final LinkedBlockingDeque<PooledTransport> idle = new LinkedBlockingDeque<>();
+    private ScheduledExecutorService evictionExecutor;
+
+    @PostConstruct
+    public void init() {
+
+        // Set SMTP server configurations.
+        Properties prop = new Properties();
+        prop.put("mail.smtp.auth", smtpProperties.isAuth());
+        prop.put("mail.smtp.starttls.enable", smtpProperties.isStarttls());
+        prop.put("mail.smtp.host", smtpProperties.getHost());
+        prop.put("mail.smtp.port", smtpProperties.getPort());
+        prop.put("mail.smtp.connectiontimeout", smtpProperties.getTimeoutMillis());
+        prop.put("mail.smtp.timeout", smtpProperties.getTimeoutMillis());
+
+        // Whether the SMTP server requires authentication or not.
+        session = smtpProperties.isAuth() ? Session.getInstance(prop, new Authenticator() {
+            @Override
+            protected PasswordAuthentication getPasswordAuthentication() {
+                return new PasswordAuthentication(smtpProperties.getUsername(), smtpProperties.getPassword());
+            }
+        }) : Session.getInstance(prop);
+
+        permits = new Semaphore(smtpProperties.getPoolSize(), true);
+        evictionExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "smtp-transport-eviction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = smtpProperties.getEvictionIntervalMillis();
+        evictionExecutor.scheduleWithFixedDelay(this::evictIdle, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+
+        evictionExecutor.shutdownNow();
+        PooledTransport transport;
+        while ((transport = idle.pollFirst()) != null) {
+            close(transport);
+        }
+    }
+
+    /**
+     * @return the mail session messages sent through this pool must be created with
+     */
+    public Session getSession() {
+
+        return session;
+    }
+
+    /**
+     * Send the message to all its recipients over a pooled connection.
+     *
+     * @param message message to send
+     * @throws MessagingException if the message could not be sent
+     */
+    public void send(Message message) throws MessagingException {
+
+        MessagingException failure = sendAll(Collections.singletonList(message))[0];
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Send the messages one after the other over a single pooled connection.
+     *
+     * @param messages messages to send
+     * @return the failure for each message by index, null where the message was sent
+     */
+    public MessagingException[] sendAll(List<? extends Message> messages) {
+
+        MessagingException[] failures = new MessagingException[messages.size()];
+        try {
+            acquirePermit();
+        } catch (MessagingException e) {
+            Arrays.fill(failures, e);
+            return failures;
+        }
+        PooledTransport transport = null;
+        // Only a connection that got through the whole batch goes back to the pool.
+        boolean reusable = false;
+        try {
+            for (int i = 0; i < failures.length; i++) {
+                Message message = messages.get(i);
+                try {
+                    message.saveChanges();
+                } catch (MessagingException e) {
+                    failures[i] = e;
+                    continue;
+                }
+                try {
+                    if (transport == null) {
+                        transport = borrow();
+                    }
+                    transport.transport.sendMessage(message, message.getAllRecipients());
+                } catch (MessagingException e) {
+                    if (isRejected(e, transport)) {
+                        failures[i] = e;
+                        continue;
+                    }
+                    // Broken connection, reconnect and retry once.
+                    log.debug("Error sending over a pooled SMTP connection, retrying on a new connection.", e);
+                    if (transport != null) {
+                        close(transport);
+                        transport = null;
+                    }
+                    try {
+                        transport = connect();
+                        transport.transport.sendMessage(message, message.getAllRecipients());
+                    } catch (MessagingException retryException) {
+                        if (isRejected(retryException, transport)) {
+                            failures[i] = retryException;
+                            continue;
+                        }
+                        // The server is unreachable, the rest of the messages fail the same way.
+                        Arrays.fill(failures, i, failures.length, retryException);
+                        return failures;
+                    }
+                }
+            }
+            reusable = true;
+            return failures;
+        } finally {
+            // Any other failure, including runtime exceptions, leaves the connection in an unknown state.
+            if (transport != null) {
+                if (reusable) {
+                    release(transport);
+                } else {
+                    close(transport);
+                }
+            }
+            permits.release();
+        }
+    }
+
+    /**
+     * @return number of idle connections
+     */
+    public int getIdleCount() {
+
+        return idle.size();
+    }
+
+    /**
+     * @return number of connections in use
+     */
+    public int getActiveCount() {
+
+        return smtpProperties.getPoolSize() - permits.availablePermits();
+    }
+
+    /**
+     * A server that rejects the message keeps the connection open, while a dropped connection surfaces as a
+     * SendFailedException too, so the connection is checked with a NOOP.
+     */
+    private static boolean isRejected(MessagingException e, PooledTransport transport) {
+
+        return e instanceof SendFailedException && transport != null && transport.transport.isConnected();
+    }
+
+    private void acquirePermit() throws MessagingException {
+
+        try {
+            if (!permits.tryAcquire(smtpProperties.getBorrowTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                throw new MessagingException("Timed out waiting for a pooled SMTP connection.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessagingException("Interrupted while waiting for a pooled SMTP connection.", e);
+        }
+    }
+
+    private PooledTransport borrow() throws MessagingException {
+
+        PooledTransport transport;
+        while ((transport = idle.pollFirst()) != null) {
+            long idleMillis = System.currentTimeMillis() - transport.lastUsed;
+            if (idleMillis > smtpProperties.getIdleTimeoutMillis()) {
+                close(transport);
+            } else if (idleMillis > smtpProperties.getValidationIntervalMillis()
+                    && !transport.transport.isConnected()) {
+                // isConnected sends a NOOP to the server.
+                close(transport);
+            } else {
+                return transport;
+            }
+        }
+        return connect();
+    }
+
+    private PooledTransport connect() throws MessagingException {
+
+        Transport transport = session.getTransport("smtp");
+        transport.connect();
+        return new PooledTransport(transport);
+    }
+
+    private void release(PooledTransport transport) {
+
+        transport.lastUsed = System.currentTimeMillis();
+        idle.offerFirst(transport);
+    }
+
+    private void evictIdle() {
+
+        long now = System.currentTimeMillis();
+        Iterator<PooledTransport> iterator = idle.descendingIterator();
+        while (iterator.hasNext()) {
+            PooledTransport transport = iterator.next();
+            // Least recently used first, removal guards against a concurrent borrow.
+            if (now - transport.lastUsed > smtpProperties.getIdleTimeoutMillis() && idle.remove(transport)) {
+                close(transport);
+            }
+        }
+    }
+
+    private void close(PooledTransport transport) {
+
+        try {
+            transport.transport.close();
+        } catch (MessagingException e) {
+            log.debug("Error while closing an SMTP connection.", e);
+        }
+    }
+
+    /**
+     * A connected transport and the time it was last returned to the pool.
+     */
+    private static final class PooledTransport {
+
+        private final Transport transport;
+        private volatile long lastUsed;
+
+        private PooledTransport(Transport transport) {
+
+            this.transport = transport;
+            this.lastUsed = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.util;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.open.security.mf.authenticator.exception.OpenSecurityMfException;
+import org.open.security.mf.authenticator.model.EmailOTPProperties;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.open.security.mf.authenticator.constant.Constants.EMAIL_OTP_MODE_STATELESS;
+import static org.open.security.mf.authenticator.constant.Constants.EMAIL_OTP_MODE_STORED;
+import static org.open.security.mf.authenticator.constant.Constants.Error.OPEN_SEC_MF_002;
+import static org.open.security.mf.authenticator.constant.Constants.Error.OPEN_SEC_MF_003;
+import static org.open.security.mf.authenticator.constant.Constants.Error.OPEN_SEC_MF_004;
+import static org.open.security.mf.authenticator.constant.Constants.Error.OPEN_SEC_MF_009;
+import static org.open.security.mf.authenticator.constant.Constants.Error.OPEN_SEC_MF_015;
+
+/**
+ * Derives email OTPs from a server key instead of storing them.
+ * <p>
+ * The OTP is derived from HMAC-SHA256(key, email | bucket | generation | block), where the bucket is the current
+ * time divided by the expiry. The first eight bytes of the first block are a tag identifying the derivation, and
+ * the OTP characters are drawn from the remaining bytes by rejection sampling, so every character of the charset
+ * is equally likely. Validation recomputes the OTP for the current and the previous bucket, so an OTP is accepted
+ * for at least the expiry and less than twice the expiry.
+ * <p>
+ * Used OTPs are remembered by their tag until their bucket can no longer validate. Once an OTP is used, the email
+ * address gets the next generation's OTP for the rest of the bucket, so a resend never mails an OTP that was
+ * already used. Like the replay record, this is local to the node.
+ */
+@Component
+public class StatelessEmailOTP {
+
+    private static final Log log = LogFactory.getLog(StatelessEmailOTP.class);
+    private static final String HMAC_SHA256 = "HmacSHA256";
+    private static final int TAG_LENGTH = 8;
+
+    private final boolean enabled;
+    private final long expiryMillis;
+    private final char[] charset;
+    // Byte values from this one up are rejected, they would favour the first characters of the charset.
+    private final int sampleLimit;
+    private final int length;
+    private final ThreadLocal<Mac> macs;
+    // HMAC tag of each used OTP to the time it stops validating.
+    private final Map<Long, Long> used = new ConcurrentHashMap<>();
+    private ScheduledExecutorService purgeExecutor;
+
+    public StatelessEmailOTP(EmailOTPProperties emailOTPProperties) throws OpenSecurityMfException {
+
+        String mode = emailOTPProperties.getMode();
+        if (!EMAIL_OTP_MODE_STORED.equalsIgnoreCase(mode) && !EMAIL_OTP_MODE_STATELESS.equalsIgnoreCase(mode)) {
+            throw Utils.handleException(OPEN_SEC_MF_015, "mode=" + mode);
+        }
+        this.enabled = EMAIL_OTP_MODE_STATELESS.equalsIgnoreCase(mode);
+        this.expiryMillis = emailOTPProperties.getExpiry() * 1000L;
+        this.charset = StringUtils.defaultString(emailOTPProperties.getCharset()).toCharArray();
+        this.length = emailOTPProperties.getLength();
+        this.sampleLimit = charset.length == 0 ? 0 : 256 - 256 % charset.length;
+        if (!enabled) {
+            macs = null;
+            return;
+        }
+        if (expiryMillis <= 0 || charset.length == 0 || charset.length > 256 || length <= 0 || length > 32) {
+            throw Utils.handleException(OPEN_SEC_MF_015, "stateless mode needs a positive expiry, a charset of up "
+                    + "to 256 characters and a length up to 32");
+        }
+        byte[] key;
+        if (StringUtils.isBlank(emailOTPProperties.getStatelessKey())) {
+            log.warn("No email.otp.stateless-key configured, using a random key. Email OTPs won't validate after a "
+                    + "restart or on other nodes.");
+            key = new byte[32];
+            new SecureRandom().nextBytes(key);
+        } else {
+            try {
+                key = Base64.getDecoder().decode(emailOTPProperties.getStatelessKey());
+            } catch (IllegalArgumentException e) {
+                throw Utils.handleException(OPEN_SEC_MF_015, "stateless-key must be Base64 encoded", e);
+            }
+        }
+        SecretKeySpec keySpec = new SecretKeySpec(key, HMAC_SHA256);
+        try {
+            // Fail fast, and keep a keyed prototype that per-thread instances are cloned from.
+            Mac prototype = Mac.getInstance(HMAC_SHA256);
+            prototype.init(keySpec);
+            macs = ThreadLocal.withInitial(() -> {
+                try {
+                    return (Mac) prototype.clone();
+                } catch (CloneNotSupportedException e) {
+                    try {
+                        Mac mac = Mac.getInstance(HMAC_SHA256);
+                        mac.init(keySpec);
+                        return mac;
+                    } catch (GeneralSecurityException ex) {
+                        throw new IllegalStateException(ex);
+                    }
+                }
+            });
+        } catch (GeneralSecurityException e) {
+            throw Utils.handleException(OPEN_SEC_MF_009, null, e);
+        }
+        purgeExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "email-otp-replay-purge");
+            thread.setDaemon(true);
+            return thread;
+        });
+        purgeExecutor.scheduleWithFixedDelay(this::purge, expiryMillis, expiryMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+
+        if (purgeExecutor != null) {
+            purgeExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return whether email OTPs are derived rather than stored
+     */
+    public boolean isEnabled() {
+
+        return enabled;
+    }
+
+    /**
+     * @param email receiver email address
+     * @return the first unused OTP for the email address in the current bucket
+     */
+    public String generate(String email) {
+
+        long bucket = bucket(System.currentTimeMillis());
+        for (int generation = 0; ; generation++) {
+            char[] derived = derive(email, bucket, generation);
+            if (!used.containsKey(tag(derived))) {
+                return new String(derived, 0, length);
+            }
+        }
+    }
+
+    /**
+     * Validate the OTP and mark it used.
+     *
+     * @param otp   OTP
+     * @param email email address the OTP was sent to
+     * @return true if valid
+     * @throws OpenSecurityMfException if the OTP is invalid, expired or already used
+     */
+    public boolean validate(String otp, String email) throws OpenSecurityMfException {
+
+        if (otp == null || email == null || otp.length() != length) {
+            throw Utils.handleException(OPEN_SEC_MF_002, null);
+        }
+        long bucket = bucket(System.currentTimeMillis());
+        for (long candidate = bucket; candidate >= bucket - 1; candidate--) {
+            for (int generation = 0; ; generation++) {
+                char[] expected = derive(email, candidate, generation);
+                long tag = tag(expected);
+                if (matches(expected, otp)) {
+                    // Valid until the end of the next bucket.
+                    if (used.putIfAbsent(tag, (candidate + 2) * expiryMillis) != null) {
+                        throw Utils.handleException(OPEN_SEC_MF_004, null);
+                    }
+                    return true;
+                }
+                // Generations are issued in order, a later one is only issued once this one is used.
+                if (!used.containsKey(tag)) {
+                    break;
+                }
+            }
+        }
+        // Only to tell an expired OTP apart from a wrong one, the replay record of that bucket is already purged.
+        if (matches(derive(email, bucket - 2, 0), otp)) {
+            throw Utils.handleException(OPEN_SEC_MF_003, null);
+        }
+        throw Utils.handleException(OPEN_SEC_MF_002, null);
+    }
+
+    /**
+     * @return number of used OTPs remembered for replay protection
+     */
+    public int getUsedCount() {
+
+        return used.size();
+    }
+
+    private long bucket(long timeMillis) {
+
+        return timeMillis / expiryMillis;
+    }
+
+    /**
+     * @return OTP characters followed by the tag bytes as chars, the tag is read from the tail
+     */
+    private char[] derive(String email, long bucket, int generation) {
+
+        Mac mac = macs.get();
+        byte[] emailBytes = email.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8);
+        char[] result = new char[length + TAG_LENGTH];
+        int position = 0;
+        // More blocks are only needed when rejection sampling discards many bytes.
+        for (int block = 0; position < length; block++) {
+            mac.update(emailBytes);
+            mac.update((byte) 0);
+            updateLong(mac, bucket);
+            updateLong(mac, ((long) generation << 32) | block);
+            byte[] hash = mac.doFinal();
+            int start = 0;
+            if (block == 0) {
+                // Tag from the first eight bytes, binds the replay record to the email, bucket and generation.
+                for (int i = 0; i < TAG_LENGTH; i++) {
+                    result[length + i] = (char) (hash[i] & 0xff);
+                }
+                start = TAG_LENGTH;
+            }
+            for (int i = start; i < hash.length && position < length; i++) {
+                int value = hash[i] & 0xff;
+                if (value < sampleLimit) {
+                    result[position++] = charset[value % charset.length];
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void updateLong(Mac mac, long value) {
+
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            mac.update((byte) (value >>> shift));
+        }
+    }
+
+    private boolean matches(char[] expected, String otp) {
+
+        // Constant time over the OTP length.
+        int diff = 0;
+        for (int i = 0; i < length; i++) {
+            diff |= expected[i] ^ otp.charAt(i);
+        }
+        return diff == 0;
+    }
+
+    private long tag(char[] derived) {
+
+        long tag = 0;
+        for (int i = 0; i < TAG_LENGTH; i++) {
+            tag = tag << 8 | derived[length + i];
+        }
+        return tag;
+    }
+
+    private void purge() {
+
+        long now = System.currentTimeMillis();
+        used.values().removeIf(validUntil -> validUntil <= now);
+    }
+}
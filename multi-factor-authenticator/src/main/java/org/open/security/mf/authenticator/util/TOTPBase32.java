@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * RFC 4648 Base32 encoding and decoding on caller supplied buffers.
+ * <p>
+ * Decoding follows commons-codec's {@code Base32}: characters outside the alphabet are skipped and decoding stops at
+ * the first pad character, so both produce the same key for any stored secret.
+ */
+final class TOTPBase32 {
+
+    private static final char PAD = '=';
+    private static final byte[] ENCODE_TABLE = "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DECODE_TABLE = new byte[128];
+
+    static {
+        Arrays.fill(DECODE_TABLE, (byte) -1);
+        for (int i = 0; i < 26; i++) {
+            DECODE_TABLE['A' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            DECODE_TABLE['2' + i] = (byte) (26 + i);
+        }
+    }
+
+    private TOTPBase32() {
+
+    }
+
+    /**
+     * Maximum number of bytes the given secret can decode to.
+     *
+     * @param secret Base32 encoded secret
+     * @return upper bound of the decoded length
+     */
+    static int maxDecodedLength(CharSequence secret) {
+
+        return secret.length() * 5 / 8;
+    }
+
+    /**
+     * Decode the given secret into the buffer.
+     *
+     * @param secret Base32 encoded secret
+     * @param buffer buffer of at least {@link #maxDecodedLength(CharSequence)} bytes
+     * @return number of decoded bytes written to the buffer
+     */
+    static int decode(CharSequence secret, byte[] buffer) {
+
+        int length = 0;
+        int bits = 0;
+        int bitCount = 0;
+        for (int i = 0; i < secret.length(); i++) {
+            char c = secret.charAt(i);
+            if (c == PAD) {
+                break;
+            }
+            int value = c < DECODE_TABLE.length ? DECODE_TABLE[c] : -1;
+            if (value < 0) {
+                continue;
+            }
+            bits = (bits << 5) | value;
+            bitCount += 5;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                buffer[length++] = (byte) (bits >>> bitCount);
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Encode whole 5 byte groups into ASCII characters. As the input is a multiple of 5 bytes, the output needs no
+     * padding and equals commons-codec's encoding.
+     *
+     * @param src       bytes to encode
+     * @param offset    offset of the first byte to encode
+     * @param length    number of bytes to encode, a multiple of 5
+     * @param dst       receives 8 ASCII characters per 5 input bytes
+     * @param dstOffset offset of the first encoded character
+     */
+    static void encode(byte[] src, int offset, int length, byte[] dst, int dstOffset) {
+
+        for (int i = offset; i < offset + length; i += 5) {
+            long group = ((long) (src[i] & 0xFF) << 32) | ((long) (src[i + 1] & 0xFF) << 24)
+                    | ((src[i + 2] & 0xFF) << 16) | ((src[i + 3] & 0xFF) << 8) | (src[i + 4] & 0xFF);
+            for (int shift = 35; shift >= 0; shift -= 5) {
+                dst[dstOffset++] = ENCODE_TABLE[(int) (group >>> shift) & 0x1F];
+            }
+        }
+    }
+}
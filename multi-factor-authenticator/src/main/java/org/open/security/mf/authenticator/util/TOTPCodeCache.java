@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of the expected codes of a secret for one time step.
+ * <p>
+ * An entry holds the codes of every slot in the validation window, so repeated validations of the same secret
+ * within a time step are a lookup. Entries of earlier time steps are never returned, and are evicted by the first
+ * lookup after the step rolls over. Entries are keyed by the {@link TOTPSecretDigest} of the secret.
+ */
+public class TOTPCodeCache {
+
+    private final int maxEntries;
+    private final ConcurrentHashMap<TOTPSecretDigest, Entry> entries;
+    private final AtomicLong latestTimeWindow = new AtomicLong(Long.MIN_VALUE);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    TOTPCodeCache(int maxEntries) {
+
+        this.maxEntries = maxEntries;
+        this.entries = new ConcurrentHashMap<>(Math.min(maxEntries, 1024));
+    }
+
+    /**
+     * Get the cached codes of the given secret.
+     *
+     * @param secret     the digest of the secret key
+     * @param timeWindow the time step the codes are calculated for
+     * @return the codes of each window slot, or null if not cached for the given time step
+     */
+    int[] get(TOTPSecretDigest secret, long timeWindow) {
+
+        evictIfRolledOver(timeWindow);
+        Entry entry = entries.get(secret);
+        if (entry != null && entry.timeWindow == timeWindow) {
+            hits.increment();
+            return entry.codes;
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Cache the codes of the given secret. Codes of time steps older than the latest seen step are not cached,
+     * and nothing is cached while the cache is full.
+     *
+     * @param secret     the digest of the secret key
+     * @param timeWindow the time step the codes are calculated for
+     * @param codes      the codes of each window slot
+     */
+    void put(TOTPSecretDigest secret, long timeWindow, int[] codes) {
+
+        if (timeWindow < latestTimeWindow.get()) {
+            return;
+        }
+        if (entries.size() >= maxEntries && !entries.containsKey(secret)) {
+            return;
+        }
+        entries.put(secret, new Entry(timeWindow, codes));
+    }
+
+    private void evictIfRolledOver(long timeWindow) {
+
+        long latest = latestTimeWindow.get();
+        // Only the thread that advances the step sweeps.
+        if (timeWindow > latest && latestTimeWindow.compareAndSet(latest, timeWindow)) {
+            entries.values().removeIf(entry -> entry.timeWindow < timeWindow);
+        }
+    }
+
+    /**
+     * @return number of lookups answered from the cache
+     */
+    public long getHits() {
+
+        return hits.sum();
+    }
+
+    /**
+     * @return number of lookups that had to calculate the codes
+     */
+    public long getMisses() {
+
+        return misses.sum();
+    }
+
+    /**
+     * @return number of cached secrets
+     */
+    public int size() {
+
+        return entries.size();
+    }
+
+    public int getMaxEntries() {
+
+        return maxEntries;
+    }
+
+    private static final class Entry {
+
+        private final long timeWindow;
+        private final int[] codes;
+
+        private Entry(long timeWindow, int[] codes) {
+
+            this.timeWindow = timeWindow;
+            this.codes = codes;
+        }
+    }
+}
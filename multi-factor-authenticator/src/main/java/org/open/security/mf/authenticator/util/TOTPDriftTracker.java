@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tracks the clock drift of each secret's device, as the window offset its last valid code matched at.
+ * <p>
+ * The tracked offset is tried first on the next validation. A secret that matched at the same offset
+ * {@code stableThreshold} times in a row is considered stable, and is validated only at that offset. A miss on a
+ * stable secret resets it, so the next validation checks the whole window again.
+ * <p>
+ * Secrets are tracked by their {@link TOTPSecretDigest}. Tracking is bounded: the tracked secrets are split over
+ * segments by digest, and a full segment evicts its least recently validated secret.
+ */
+public class TOTPDriftTracker {
+
+    private static final int SEGMENTS = 16;
+    // Smaller trackers use a single segment, so their least recently validated secret is evicted exactly.
+    private static final int MIN_SEGMENT_SIZE = 64;
+
+    private final int firstOffset;
+    private final int maxEntries;
+    private final int stableThreshold;
+    private final Segment[] segments;
+    private final AtomicLongArray offsetHits;
+    private final LongAdder hmacs = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param windowSize      number of time steps in the validation window
+     * @param maxEntries      maximum number of tracked secrets
+     * @param stableThreshold consecutive matches at one offset after which the window shrinks, 0 to never shrink
+     */
+    TOTPDriftTracker(int windowSize, int maxEntries, int stableThreshold) {
+
+        this.firstOffset = -((windowSize - 1) / 2);
+        this.maxEntries = maxEntries;
+        this.stableThreshold = stableThreshold;
+        int segmentCount = maxEntries >= SEGMENTS * MIN_SEGMENT_SIZE ? SEGMENTS : 1;
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(Math.max(maxEntries, 0) / segmentCount);
+        }
+        this.offsetHits = new AtomicLongArray(windowSize);
+    }
+
+    /**
+     * Get the tracked drift of the given secret.
+     *
+     * @param secret the digest of the secret key
+     * @return the drift, or null if the secret has no successful validation tracked yet
+     */
+    Drift get(TOTPSecretDigest secret) {
+
+        Segment segment = segmentFor(secret);
+        synchronized (segment) {
+            return segment.get(secret);
+        }
+    }
+
+    /**
+     * Record a successful validation.
+     *
+     * @param secret the digest of the secret key
+     * @param drift  the tracked drift of the secret, null if not tracked yet
+     * @param offset the window offset the code matched at
+     * @param hmacs  number of HMACs calculated for the validation
+     */
+    void recordMatch(TOTPSecretDigest secret, Drift drift, int offset, int hmacs) {
+
+        offsetHits.incrementAndGet(offset - firstOffset);
+        this.hmacs.add(hmacs);
+        if (drift == null) {
+            if (maxEntries <= 0) {
+                return;
+            }
+            Segment segment = segmentFor(secret);
+            synchronized (segment) {
+                drift = segment.computeIfAbsent(secret, key -> new Drift());
+            }
+        }
+        // Racing validations of the same secret may lose an update, which only costs an extra HMAC later.
+        if (drift.offset == offset) {
+            drift.consecutiveMatches++;
+        } else {
+            drift.offset = offset;
+            drift.consecutiveMatches = 1;
+        }
+    }
+
+    /**
+     * Record a failed validation.
+     *
+     * @param drift the tracked drift of the secret, null if not tracked yet
+     * @param hmacs number of HMACs calculated for the validation
+     */
+    void recordMiss(Drift drift, int hmacs) {
+
+        this.hmacs.add(hmacs);
+        if (drift != null) {
+            drift.consecutiveMatches = 0;
+        }
+    }
+
+    /**
+     * Whether only the tracked offset of the given drift should be validated.
+     *
+     * @param drift the tracked drift of the secret, null if not tracked yet
+     * @return true if the window is shrunk to the tracked offset
+     */
+    boolean isStable(Drift drift) {
+
+        return drift != null && stableThreshold > 0 && drift.consecutiveMatches >= stableThreshold;
+    }
+
+    /**
+     * Get the number of successful validations matched at each window offset, starting from the oldest offset.
+     *
+     * @return offset hit histogram
+     */
+    public long[] getOffsetHits() {
+
+        long[] hits = new long[offsetHits.length()];
+        for (int i = 0; i < hits.length; i++) {
+            hits[i] = offsetHits.get(i);
+        }
+        return hits;
+    }
+
+    /**
+     * @return the window offset of the first histogram bucket
+     */
+    public int getFirstOffset() {
+
+        return firstOffset;
+    }
+
+    /**
+     * @return total number of HMACs calculated by tracked validations
+     */
+    public long getHmacs() {
+
+        return hmacs.sum();
+    }
+
+    /**
+     * @return number of tracked secrets
+     */
+    public int size() {
+
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return number of secrets evicted to make room for newly tracked ones
+     */
+    public long getEvictions() {
+
+        return evictions.sum();
+    }
+
+    public int getMaxEntries() {
+
+        return maxEntries;
+    }
+
+    private Segment segmentFor(TOTPSecretDigest secret) {
+
+        // High bits select the segment, the low bits stay spread over the segment's hash buckets.
+        return segments[(secret.hashCode() >>> 28) & (segments.length - 1)];
+    }
+
+    /**
+     * Secrets of one segment in access order, guarded by the segment's monitor.
+     */
+    private final class Segment extends LinkedHashMap<TOTPSecretDigest, Drift> {
+
+        private final int capacity;
+
+        private Segment(int capacity) {
+
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<TOTPSecretDigest, Drift> eldest) {
+
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Drift of a single secret.
+     */
+    static final class Drift {
+
+        private volatile int offset;
+        private volatile int consecutiveMatches;
+
+        int getOffset() {
+
+            return offset;
+        }
+    }
+}
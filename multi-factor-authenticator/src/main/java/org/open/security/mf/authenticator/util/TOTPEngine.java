@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.util;
+
+import org.open.security.mf.authenticator.exception.OpenSecurityMfException;
+import org.open.security.mf.authenticator.model.TOTPProperties;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.open.security.mf.authenticator.constant.Constants.Error.OPEN_SEC_MF_012;
+import static org.open.security.mf.authenticator.constant.Constants.TOTP_HMAC_ENGINE_BUILTIN;
+
+/**
+ * Calculates and validates TOTP codes (RFC 6238) for one configuration of HMAC algorithm, code digits, time step
+ * and window size. All constants are resolved when the engine is built, and the engine is immutable afterwards,
+ * so it can be shared by any number of threads.
+ */
+public class TOTPEngine {
+
+    private static final int[] POWERS_OF_TEN = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000,
+            100_000_000, 1_000_000_000};
+
+    private final String hmacAlgorithm;
+    private final int codeDigits;
+    private final int keyModulus;
+    private final long timeStepSizeInMillis;
+    private final int windowSize;
+    private final TOTPMacPool macPool;
+    private final TOTPCodeCache codeCache;
+    private final TOTPDriftTracker driftTracker;
+
+    /**
+     * @param hmacAlgorithm   JCE name of the HMAC algorithm, ex: HmacSHA1, HmacSHA256, HmacSHA512
+     * @param codeDigits      number of digits of a code, 1 to 9
+     * @param timeStepSeconds length of a time step in seconds
+     * @param windowSize      number of time steps a code is accepted in
+     * @param totpProperties  HMAC engine, code cache and drift tracking settings
+     * @throws OpenSecurityMfException if the configuration is invalid
+     */
+    TOTPEngine(String hmacAlgorithm, int codeDigits, int timeStepSeconds, int windowSize,
+               TOTPProperties totpProperties) throws OpenSecurityMfException {
+
+        if (codeDigits < 1 || codeDigits >= POWERS_OF_TEN.length) {
+            throw Utils.handleException(OPEN_SEC_MF_012, "digits " + codeDigits);
+        }
+        if (timeStepSeconds <= 0) {
+            throw Utils.handleException(OPEN_SEC_MF_012, "time step " + timeStepSeconds);
+        }
+        if (windowSize <= 0) {
+            throw Utils.handleException(OPEN_SEC_MF_012, "window size " + windowSize);
+        }
+        this.hmacAlgorithm = hmacAlgorithm;
+        this.codeDigits = codeDigits;
+        this.keyModulus = POWERS_OF_TEN[codeDigits];
+        this.timeStepSizeInMillis = TimeUnit.SECONDS.toMillis(timeStepSeconds);
+        this.windowSize = windowSize;
+        this.macPool = new TOTPMacPool(hmacAlgorithm,
+                TOTP_HMAC_ENGINE_BUILTIN.equalsIgnoreCase(totpProperties.getHmacEngine()));
+        this.codeCache = totpProperties.isCacheEnabled() ? new TOTPCodeCache(totpProperties.getCacheSize()) : null;
+        this.driftTracker = totpProperties.isDriftTrackingEnabled() ? new TOTPDriftTracker(windowSize,
+                totpProperties.getDriftTrackingSize(), totpProperties.getDriftStableThreshold()) : null;
+    }
+
+    public String getHmacAlgorithm() {
+
+        return hmacAlgorithm;
+    }
+
+    public int getCodeDigits() {
+
+        return codeDigits;
+    }
+
+    public int getKeyModulus() {
+
+        return keyModulus;
+    }
+
+    public long getTimeStepSizeInMillis() {
+
+        return timeStepSizeInMillis;
+    }
+
+    public int getWindowSize() {
+
+        return windowSize;
+    }
+
+    /**
+     * Get the code cache.
+     *
+     * @return the code cache, or null if caching is disabled
+     */
+    public TOTPCodeCache getCodeCache() {
+
+        return codeCache;
+    }
+
+    /**
+     * Get the drift tracker.
+     *
+     * @return the drift tracker, or null if drift tracking is disabled
+     */
+    public TOTPDriftTracker getDriftTracker() {
+
+        return driftTracker;
+    }
+
+    /**
+     * Calculates the verification code of the provided key at the specified
+     * instant of time.
+     *
+     * @param mac the MAC, already initialized with the secret key
+     * @param tm  the instant of time
+     * @return the validation code for the provided key at the specified instant
+     * of time.
+     */
+    private int calculateCode(TOTPHmac mac, long tm) {
+
+        // Calculate the module with the maximum validation code value.
+        return mac.truncatedHash(tm) % keyModulus;
+    }
+
+    /**
+     * This method implements the algorithm specified in RFC 6238 to check if a validation code is
+     * valid in a given instant of time for the given secret key.
+     *
+     * @param secret    The Base32 encoded secret key
+     * @param code      The code to validate
+     * @param timestamp The instant of time to use during the validation process
+     * @return <code>true</code> if the validation code is valid, <code>false</code> otherwise
+     * @throws OpenSecurityMfException
+     */
+    public boolean checkCode(String secret, long code, long timestamp) throws OpenSecurityMfException {
+
+        if (codeCache != null) {
+            return checkCachedCode(secret, code, timestamp);
+        }
+        if (driftTracker != null) {
+            return checkCodeWithDrift(secret, code, timestamp);
+        }
+
+        // Provider lookup and key initialization happen once for the whole window. The secret is decoded into a
+        // per thread buffer.
+        TOTPHmac mac = macPool.acquire(secret);
+
+        // convert unix time into a time step "window" as specified by the TOTP specification.
+        final long timeWindow = getTimeWindowFromTime(timestamp);
+
+        // Calculating the verification code of the given key in each of the
+        // time intervals and returning true if the provided code is equal to
+        // one of them.
+        for (int i = -((windowSize - 1) / 2); i <= windowSize / 2; ++i) {
+            // Calculating the verification code for the current time interval.
+            long hash = calculateCode(mac, timeWindow + i);
+
+            // Checking if the provided code is equal to the calculated one.
+            if (hash == code) {
+                // The verification code is valid.
+                return true;
+            }
+        }
+        // The verification code is invalid.
+        return false;
+    }
+
+    /**
+     * Check several codes of the same secret, each at its own instant of time. The secret is decoded and the MAC
+     * keyed once for all of them.
+     *
+     * @param secret     The Base32 encoded secret key
+     * @param codes      The codes to validate
+     * @param timestamps The instant of time to use for each code
+     * @param count      Number of codes to validate
+     * @param results    Receives whether each code is valid
+     * @throws OpenSecurityMfException
+     */
+    public void checkCodes(String secret, long[] codes, long[] timestamps, int count, boolean[] results)
+            throws OpenSecurityMfException {
+
+        TOTPHmac mac = macPool.acquire(secret);
+        for (int c = 0; c < count; c++) {
+            final long timeWindow = getTimeWindowFromTime(timestamps[c]);
+            results[c] = false;
+            for (int i = -((windowSize - 1) / 2); i <= windowSize / 2; ++i) {
+                if (calculateCode(mac, timeWindow + i) == codes[c]) {
+                    results[c] = true;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Check the code starting at the window offset the secret last matched at, and only at that offset when the
+     * secret's clock is stable.
+     */
+    private boolean checkCodeWithDrift(String secret, long code, long timestamp) throws OpenSecurityMfException {
+
+        TOTPHmac mac = macPool.acquire(secret);
+        final long timeWindow = getTimeWindowFromTime(timestamp);
+        TOTPSecretDigest digest = TOTPSecretDigest.of(secret);
+        TOTPDriftTracker.Drift drift = driftTracker.get(digest);
+        // Devices are most likely in sync, so the current time step goes first for untracked secrets.
+        int preferred = drift == null ? 0 : drift.getOffset();
+        int hmacs = 1;
+        if (calculateCode(mac, timeWindow + preferred) == code) {
+            driftTracker.recordMatch(digest, drift, preferred, hmacs);
+            return true;
+        }
+        if (!driftTracker.isStable(drift)) {
+            for (int i = -((windowSize - 1) / 2); i <= windowSize / 2; ++i) {
+                if (i == preferred) {
+                    continue;
+                }
+                hmacs++;
+                if (calculateCode(mac, timeWindow + i) == code) {
+                    driftTracker.recordMatch(digest, drift, i, hmacs);
+                    return true;
+                }
+            }
+        }
+        driftTracker.recordMiss(drift, hmacs);
+        return false;
+    }
+
+    /**
+     * Check the code against the expected codes of the whole window, served from the code cache when the secret
+     * was already validated in the same time step.
+     */
+    private boolean checkCachedCode(String secret, long code, long timestamp) throws OpenSecurityMfException {
+
+        final long timeWindow = getTimeWindowFromTime(timestamp);
+        TOTPSecretDigest digest = TOTPSecretDigest.of(secret);
+        int[] codes = codeCache.get(digest, timeWindow);
+        if (codes == null) {
+            TOTPHmac mac = macPool.acquire(secret);
+            int first = -((windowSize - 1) / 2);
+            codes = new int[windowSize];
+            for (int i = 0; i < windowSize; i++) {
+                codes[i] = calculateCode(mac, timeWindow + first + i);
+            }
+            codeCache.put(digest, timeWindow, codes);
+        }
+        for (int expected : codes) {
+            if (expected == code) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get time window form time.
+     *
+     * @param time time in millisecond
+     * @return time window form time
+     */
+    long getTimeWindowFromTime(long time) {
+        return time / timeStepSizeInMillis;
+    }
+}
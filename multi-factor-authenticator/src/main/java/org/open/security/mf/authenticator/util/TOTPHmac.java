@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.util;
+
+import org.open.security.mf.authenticator.exception.OpenSecurityMfException;
+
+/**
+ * HMAC used to calculate TOTP codes. Instances keep per-key state and are confined to a single thread.
+ */
+interface TOTPHmac {
+
+    /**
+     * Initialize the HMAC with the given key. Replaces any previously set key.
+     *
+     * @param key    the secret key in binary format
+     * @param offset offset of the key in the array
+     * @param length length of the key
+     * @throws OpenSecurityMfException
+     */
+    void init(byte[] key, int offset, int length) throws OpenSecurityMfException;
+
+    /**
+     * Calculate the HMAC of the given counter and apply dynamic truncation (RFC4226, 5.3. Generating an HOTP
+     * value).
+     *
+     * @param counter the moving factor
+     * @return the 31 bit truncated hash
+     */
+    int truncatedHash(long counter);
+}
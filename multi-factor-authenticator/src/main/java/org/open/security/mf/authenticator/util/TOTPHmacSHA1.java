@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.util;
+
+import org.open.security.mf.authenticator.exception.OpenSecurityMfException;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static org.open.security.mf.authenticator.constant.Constants.Error.OPEN_SEC_MF_008;
+
+/**
+ * HMAC-SHA1 specialised for TOTP, where the message is always an 8 byte counter.
+ * <p>
+ * The SHA-1 state after compressing the inner (key ^ ipad) and outer (key ^ opad) blocks depends only on the key,
+ * so it is calculated once in {@link #init(byte[], int, int)}. Each counter then costs exactly two compression
+ * calls, one for the padded counter block and one for the padded inner digest block, without any intermediate
+ * byte arrays.
+ */
+class TOTPHmacSHA1 implements TOTPHmac {
+
+    private static final int BLOCK_SIZE = 64;
+    private static final int IPAD = 0x36363636;
+    private static final int OPAD = 0x5C5C5C5C;
+    // Message bit lengths including the key block: 8 byte counter and 20 byte inner digest.
+    private static final int INNER_MESSAGE_BITS = (BLOCK_SIZE + 8) * 8;
+    private static final int OUTER_MESSAGE_BITS = (BLOCK_SIZE + 20) * 8;
+
+    private final int[] innerState = new int[5];
+    private final int[] outerState = new int[5];
+    private final int[] state = new int[5];
+    private final int[] w = new int[80];
+    private MessageDigest keyDigest;
+
+    @Override
+    public void init(byte[] key, int offset, int length) throws OpenSecurityMfException {
+
+        // Keys longer than the block size are replaced by their hash (RFC2104, 2. Definition of HMAC).
+        if (length > BLOCK_SIZE) {
+            key = digestKey(key, offset, length);
+            offset = 0;
+            length = key.length;
+        }
+        loadKeyBlock(key, offset, length, IPAD);
+        resetState(innerState);
+        compress(innerState);
+        loadKeyBlock(key, offset, length, OPAD);
+        resetState(outerState);
+        compress(outerState);
+    }
+
+    @Override
+    public int truncatedHash(long counter) {
+
+        // Inner hash: counter, followed by the SHA-1 padding of the 72 byte message.
+        System.arraycopy(innerState, 0, state, 0, 5);
+        w[0] = (int) (counter >>> 32);
+        w[1] = (int) counter;
+        w[2] = 0x80000000;
+        for (int i = 3; i < 15; i++) {
+            w[i] = 0;
+        }
+        w[15] = INNER_MESSAGE_BITS;
+        compress(state);
+
+        // Outer hash: inner digest, followed by the SHA-1 padding of the 84 byte message.
+        System.arraycopy(state, 0, w, 0, 5);
+        System.arraycopy(outerState, 0, state, 0, 5);
+        w[5] = 0x80000000;
+        for (int i = 6; i < 15; i++) {
+            w[i] = 0;
+        }
+        w[15] = OUTER_MESSAGE_BITS;
+        compress(state);
+
+        // Dynamic truncation (RFC4226, 5.3. Generating an HOTP value) on the big-endian digest words.
+        int offset = state[4] & 0xF;
+        int word = offset >>> 2;
+        int shift = (offset & 3) << 3;
+        int truncatedHash = shift == 0 ? state[word] : (state[word] << shift) | (state[word + 1] >>> (32 - shift));
+        return truncatedHash & 0x7FFFFFFF;
+    }
+
+    private void loadKeyBlock(byte[] key, int offset, int length, int pad) {
+
+        for (int i = 0; i < 16; i++) {
+            int word = 0;
+            for (int j = 0; j < 4; j++) {
+                int index = (i << 2) + j;
+                word = (word << 8) | (index < length ? key[offset + index] & 0xFF : 0);
+            }
+            w[i] = word ^ pad;
+        }
+    }
+
+    private byte[] digestKey(byte[] key, int offset, int length) throws OpenSecurityMfException {
+
+        try {
+            if (keyDigest == null) {
+                keyDigest = MessageDigest.getInstance("SHA-1");
+            }
+        } catch (NoSuchAlgorithmException e) {
+            throw Utils.handleException(OPEN_SEC_MF_008, null, e);
+        }
+        keyDigest.update(key, offset, length);
+        return keyDigest.digest();
+    }
+
+    private static void resetState(int[] h) {
+
+        h[0] = 0x67452301;
+        h[1] = 0xEFCDAB89;
+        h[2] = 0x98BADCFE;
+        h[3] = 0x10325476;
+        h[4] = 0xC3D2E1F0;
+    }
+
+    /**
+     * SHA-1 compression function (FIPS 180-4, 6.1.2) over the 16 words loaded in {@code w}.
+     */
+    private void compress(int[] h) {
+
+        for (int t = 16; t < 80; t++) {
+            w[t] = Integer.rotateLeft(w[t - 3] ^ w[t - 8] ^ w[t - 14] ^ w[t - 16], 1);
+        }
+        int a = h[0];
+        int b = h[1];
+        int c = h[2];
+        int d = h[3];
+        int e = h[4];
+        for (int t = 0; t < 20; t++) {
+            int temp = Integer.rotateLeft(a, 5) + ((b & c) | (~b & d)) + e + w[t] + 0x5A827999;
+            e = d;
+            d = c;
+            c = Integer.rotateLeft(b, 30);
+            b = a;
+            a = temp;
+        }
+        for (int t = 20; t < 40; t++) {
+            int temp = Integer.rotateLeft(a, 5) + (b ^ c ^ d) + e + w[t] + 0x6ED9EBA1;
+            e = d;
+            d = c;
+            c = Integer.rotateLeft(b, 30);
+            b = a;
+            a = temp;
+        }
+        for (int t = 40; t < 60; t++) {
+            int temp = Integer.rotateLeft(a, 5) + ((b & c) | (b & d) | (c & d)) + e + w[t] + 0x8F1BBCDC;
+            e = d;
+            d = c;
+            c = Integer.rotateLeft(b, 30);
+            b = a;
+            a = temp;
+        }
+        for (int t = 60; t < 80; t++) {
+            int temp = Integer.rotateLeft(a, 5) + (b ^ c ^ d) + e + w[t] + 0xCA62C1D6;
+            e = d;
+            d = c;
+            c = Integer.rotateLeft(b, 30);
+            b = a;
+            a = temp;
+        }
+        h[0] += a;
+        h[1] += b;
+        h[2] += c;
+        h[3] += d;
+        h[4] += e;
+    }
+}
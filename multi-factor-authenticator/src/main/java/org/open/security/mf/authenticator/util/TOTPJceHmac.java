@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.util;
+
+import org.open.security.mf.authenticator.exception.OpenSecurityMfException;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.open.security.mf.authenticator.constant.Constants.Error.OPEN_SEC_MF_008;
+import static org.open.security.mf.authenticator.constant.Constants.Error.OPEN_SEC_MF_009;
+
+/**
+ * {@link TOTPHmac} backed by a {@link Mac} from the Java Cryptography Extension(JCE).
+ */
+class TOTPJceHmac implements TOTPHmac {
+
+    private final String algorithm;
+    private final Mac mac;
+    // Reused across calls, the MAC is confined to a single thread.
+    private final byte[] data = new byte[8];
+    private final byte[] hash;
+
+    TOTPJceHmac(String algorithm) throws OpenSecurityMfException {
+
+        this.algorithm = algorithm;
+        try {
+            this.mac = Mac.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw Utils.handleException(OPEN_SEC_MF_008, null, e);
+        }
+        this.hash = new byte[mac.getMacLength()];
+    }
+
+    @Override
+    public void init(byte[] key, int offset, int length) throws OpenSecurityMfException {
+
+        try {
+            mac.init(new SecretKeySpec(key, offset, length, algorithm));
+        } catch (InvalidKeyException e) {
+            throw Utils.handleException(OPEN_SEC_MF_009, null, e);
+        }
+    }
+
+    @Override
+    public int truncatedHash(long counter) {
+
+        long value = counter;
+
+        // Converting the instant of time from the long representation to a
+        // big-endian array of bytes (RFC4226, 5.2. Description).
+        for (int i = 8; i-- > 0; value >>>= 8) {
+            data[i] = (byte) value;
+        }
+
+        // Processing the instant of time and getting the encrypted data.
+        // doFinal resets the MAC, so the same key can be reused for the next instant.
+        mac.update(data);
+        try {
+            mac.doFinal(hash, 0);
+        } catch (ShortBufferException e) {
+            // Not possible, the buffer is sized by the MAC length.
+            throw new IllegalStateException(e);
+        }
+
+        // Building the validation code performing dynamic truncation
+        // (RFC4226, 5.3. Generating an HOTP value)
+        int offset = hash[hash.length - 1] & 0xF;
+
+        int truncatedHash = 0;
+        for (int i = 0; i < 4; ++i) {
+            truncatedHash <<= 8;
+
+            // Java bytes are signed but we need an unsigned integer:
+            // cleaning off all but the LSB.
+            truncatedHash |= (hash[offset + i] & 0xFF);
+        }
+
+        // Clean bits higher than the 32nd (inclusive).
+        return truncatedHash & 0x7FFFFFFF;
+    }
+}
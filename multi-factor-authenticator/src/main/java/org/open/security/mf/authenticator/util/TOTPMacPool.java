@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.util;
+
+import org.open.security.mf.authenticator.exception.OpenSecurityMfException;
+
+/**
+ * Keeps one {@link TOTPHmac} instance per thread for the given HMAC algorithm, so the JCE provider lookup happens
+ * once per thread instead of once per calculated code. Each thread also owns a key buffer that Base32 secrets are
+ * decoded into, so keying the built-in engine from a secret allocates nothing in steady state.
+ */
+public class TOTPMacPool {
+
+    private static final String HMAC_SHA1 = "HmacSHA1";
+    private final String algorithm;
+    private final boolean builtin;
+    private final ThreadLocal<PooledMac> macs = new ThreadLocal<>();
+
+    /**
+     * @param algorithm JCE name of the HMAC algorithm
+     * @param builtin   whether to use the built-in {@link TOTPHmacSHA1} instead of the JCE for HmacSHA1
+     * @throws OpenSecurityMfException
+     */
+    TOTPMacPool(String algorithm, boolean builtin) throws OpenSecurityMfException {
+
+        this.algorithm = algorithm;
+        this.builtin = builtin && HMAC_SHA1.equalsIgnoreCase(algorithm);
+        // Fail fast on an unsupported algorithm rather than on the first validation.
+        macs.set(new PooledMac(newMac()));
+    }
+
+    /**
+     * Get the calling thread's MAC, initialized with the given Base32 encoded secret. The secret is decoded into
+     * a buffer owned by the thread. The returned instance must not be shared with other threads.
+     *
+     * @param secret the Base32 encoded secret key
+     * @return MAC ready to process data for the given key
+     * @throws OpenSecurityMfException
+     */
+    TOTPHmac acquire(CharSequence secret) throws OpenSecurityMfException {
+
+        PooledMac pooledMac = pooledMac();
+        int maxLength = TOTPBase32.maxDecodedLength(secret);
+        if (pooledMac.key.length < maxLength) {
+            pooledMac.key = new byte[maxLength];
+        }
+        int length = TOTPBase32.decode(secret, pooledMac.key);
+        pooledMac.mac.init(pooledMac.key, 0, length);
+        return pooledMac.mac;
+    }
+
+    private PooledMac pooledMac() throws OpenSecurityMfException {
+
+        PooledMac pooledMac = macs.get();
+        if (pooledMac == null) {
+            pooledMac = new PooledMac(newMac());
+            macs.set(pooledMac);
+        }
+        return pooledMac;
+    }
+
+    private TOTPHmac newMac() throws OpenSecurityMfException {
+
+        return builtin ? new TOTPHmacSHA1() : new TOTPJceHmac(algorithm);
+    }
+
+    /**
+     * Per thread MAC and key buffer.
+     */
+    private static final class PooledMac {
+
+        // Sized for the default 80 bit secret, grown on demand.
+        private static final int INITIAL_KEY_LENGTH = 16;
+        private final TOTPHmac mac;
+        private byte[] key = new byte[INITIAL_KEY_LENGTH];
+
+        private PooledMac(TOTPHmac mac) {
+
+            this.mac = mac;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.util;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 digest of a Base32 secret, truncated to 128 bits. Per secret caches are keyed by the digest instead of
+ * the secret, so shared secrets are not kept on the heap for as long as their entries live.
+ */
+final class TOTPSecretDigest {
+
+    private static final int DIGEST_LENGTH = 32;
+    private static final ThreadLocal<Digester> DIGESTERS = ThreadLocal.withInitial(Digester::new);
+
+    private final long high;
+    private final long low;
+
+    private TOTPSecretDigest(long high, long low) {
+
+        this.high = high;
+        this.low = low;
+    }
+
+    /**
+     * Digest the given secret with the calling thread's digester.
+     *
+     * @param secret the Base32 encoded secret key
+     * @return the digest of the secret
+     */
+    static TOTPSecretDigest of(CharSequence secret) {
+
+        return DIGESTERS.get().digest(secret);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TOTPSecretDigest)) {
+            return false;
+        }
+        TOTPSecretDigest that = (TOTPSecretDigest) o;
+        return high == that.high && low == that.low;
+    }
+
+    @Override
+    public int hashCode() {
+
+        return (int) (low ^ (low >>> 32));
+    }
+
+    /**
+     * Per thread digest and buffers.
+     */
+    private static final class Digester {
+
+        private final MessageDigest digest;
+        private final byte[] output = new byte[DIGEST_LENGTH];
+        // Sized for the default 16 character secret, grown on demand.
+        private byte[] input = new byte[32];
+
+        private Digester() {
+
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                // Every Java platform is required to support SHA-256.
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private TOTPSecretDigest digest(CharSequence secret) {
+
+            // Two bytes per character, so distinct secrets are distinct inputs.
+            int length = secret.length() * 2;
+            if (input.length < length) {
+                input = new byte[length];
+            }
+            for (int i = 0; i < secret.length(); i++) {
+                char c = secret.charAt(i);
+                input[i * 2] = (byte) (c >>> 8);
+                input[i * 2 + 1] = (byte) c;
+            }
+            digest.update(input, 0, length);
+            try {
+                digest.digest(output, 0, DIGEST_LENGTH);
+            } catch (DigestException e) {
+                // Not possible, the buffer is sized by the digest length.
+                throw new IllegalStateException(e);
+            }
+            return new TOTPSecretDigest(readLong(output, 0), readLong(output, 8));
+        }
+
+        private static long readLong(byte[] bytes, int offset) {
+
+            long value = 0;
+            for (int i = offset; i < offset + 8; i++) {
+                value = (value << 8) | (bytes[i] & 0xFF);
+            }
+            return value;
+        }
+    }
+}
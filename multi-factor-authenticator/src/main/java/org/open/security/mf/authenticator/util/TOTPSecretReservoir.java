@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Bounded reservoir of ready-made secrets, kept full by a background thread so enrollment only polls a lock-free
+ * queue.
+ * <p>
+ * The refill thread runs every refill interval and generates at most refill batch secrets per run, which bounds
+ * the rate it draws from the secure random. A draw that leaves fewer than the low-water mark secrets triggers an
+ * immediate refill run. When the reservoir is empty, the secret is generated on the caller's thread.
+ */
+public class TOTPSecretReservoir {
+
+    private static final Log log = LogFactory.getLog(TOTPSecretReservoir.class);
+    private final Supplier<String> generator;
+    private final int capacity;
+    private final int lowWaterMark;
+    private final int refillBatch;
+    private final ConcurrentLinkedQueue<String> secrets = new ConcurrentLinkedQueue<>();
+    // ConcurrentLinkedQueue.size() is a traversal, so the size is tracked separately.
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicBoolean refillRequested = new AtomicBoolean();
+    private final ScheduledExecutorService refillExecutor;
+    private final LongAdder draws = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder lowWaterMarkHits = new LongAdder();
+    private final LongAdder refilled = new LongAdder();
+
+    /**
+     * @param generator            generates a single secret
+     * @param capacity             maximum number of secrets held
+     * @param lowWaterMark         size below which a refill is triggered right away
+     * @param refillBatch          maximum number of secrets generated per refill run
+     * @param refillIntervalMillis interval between scheduled refill runs
+     */
+    TOTPSecretReservoir(Supplier<String> generator, int capacity, int lowWaterMark, int refillBatch,
+                        long refillIntervalMillis) {
+
+        this.generator = generator;
+        this.capacity = capacity;
+        this.lowWaterMark = lowWaterMark;
+        this.refillBatch = refillBatch;
+        this.refillExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "totp-secret-reservoir");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refillExecutor.scheduleWithFixedDelay(this::refill, 0, refillIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Take a secret from the reservoir, or generate one if the reservoir is empty.
+     *
+     * @return a new secret
+     */
+    String draw() {
+
+        draws.increment();
+        String secret = secrets.poll();
+        if (secret == null) {
+            misses.increment();
+            requestRefill();
+            return generator.get();
+        }
+        if (size.decrementAndGet() < lowWaterMark) {
+            lowWaterMarkHits.increment();
+            requestRefill();
+        }
+        return secret;
+    }
+
+    /**
+     * Stop refilling and drop the remaining secrets.
+     */
+    void shutdown() {
+
+        refillExecutor.shutdownNow();
+        secrets.clear();
+        size.set(0);
+    }
+
+    private void requestRefill() {
+
+        if (refillRequested.compareAndSet(false, true)) {
+            try {
+                refillExecutor.execute(this::refill);
+            } catch (RuntimeException e) {
+                // Rejected after shutdown.
+                refillRequested.set(false);
+            }
+        }
+    }
+
+    private void refill() {
+
+        refillRequested.set(false);
+        try {
+            // Only this thread adds, so the size can only shrink while topping up.
+            for (int i = 0; i < refillBatch && size.get() < capacity; i++) {
+                secrets.offer(generator.get());
+                size.incrementAndGet();
+                refilled.increment();
+            }
+        } catch (RuntimeException e) {
+            // An exception would cancel the scheduled refills.
+            log.error("Error while refilling the TOTP secret reservoir.", e);
+        }
+    }
+
+    /**
+     * @return number of secrets ready to be drawn
+     */
+    public int size() {
+
+        return size.get();
+    }
+
+    public int getCapacity() {
+
+        return capacity;
+    }
+
+    /**
+     * @return number of secrets drawn
+     */
+    public long getDraws() {
+
+        return draws.sum();
+    }
+
+    /**
+     * @return number of draws that found the reservoir empty and generated on the caller's thread
+     */
+    public long getMisses() {
+
+        return misses.sum();
+    }
+
+    /**
+     * @return number of draws that left the reservoir below the low-water mark
+     */
+    public long getLowWaterMarkHits() {
+
+        return lowWaterMarkHits.sum();
+    }
+
+    /**
+     * @return number of secrets generated by the refill thread
+     */
+    public long getRefilled() {
+
+        return refilled.sum();
+    }
+}
@@ -18,25 +18,37 @@
 
 package org.open.security.mf.authenticator.util;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.open.security.mf.authenticator.exception.OpenSecurityMfException;
 
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.SecureRandom;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.open.security.mf.authenticator.constant.Constants.Error.OPEN_SEC_MF_006;
 import static org.open.security.mf.authenticator.constant.Constants.Error.OPEN_SEC_MF_007;
 
+/**
+ * A {@link SecureRandom} that is rebuilt, and so reseeded, after {@value #MAX_OPERATIONS} operations. The rebuild
+ * runs on the given executor while callers keep using the current generator.
+ */
 public class TOTPSecureRandom {
 
+    private static final Log log = LogFactory.getLog(TOTPSecureRandom.class);
     private static final int MAX_OPERATIONS = 1_000_000;
     private final String provider;
     private final String algorithm;
+    private final Executor reseedExecutor;
     private final AtomicInteger count = new AtomicInteger(0);
-    private SecureRandom secureRandom;
+    private final AtomicBoolean reseeding = new AtomicBoolean(false);
+    private volatile SecureRandom secureRandom;
 
-    TOTPSecureRandom(String algorithm, String provider) throws OpenSecurityMfException {
+    TOTPSecureRandom(String algorithm, String provider, Executor reseedExecutor) throws OpenSecurityMfException {
 
         if (algorithm == null) {
             throw Utils.handleException(OPEN_SEC_MF_006, null);
@@ -45,30 +57,31 @@ public class TOTPSecureRandom {
         } else {
             this.algorithm = algorithm;
             this.provider = provider;
-            this.buildSecureRandom();
+            this.reseedExecutor = reseedExecutor;
+            this.secureRandom = this.buildSecureRandom();
         }
     }
 
     /**
      * Build secure random.
      */
-    private void buildSecureRandom() throws OpenSecurityMfException{
+    private SecureRandom buildSecureRandom() throws OpenSecurityMfException{
         try {
             if (this.algorithm == null && this.provider == null) {
-                this.secureRandom = new SecureRandom();
+                return new SecureRandom();
             } else if (this.provider == null) {
-                this.secureRandom = SecureRandom.getInstance(this.algorithm);
+                return SecureRandom.getInstance(this.algorithm);
             } else {
-                this.secureRandom = SecureRandom.getInstance(this.algorithm, this.provider);
+                return SecureRandom.getInstance(this.algorithm, this.provider);
             }
         } catch (NoSuchAlgorithmException e) {
             throw Utils.handleException(OPEN_SEC_MF_006,
                     String.format("Could not initialise SecureRandom with the specified algorithm : %s. Change "
-                                    + "algorithm by system property 'com.wso2.rng.algorithm'.", this.algorithm), e);
+                                    + "algorithm by configuration property 'totp.algorithm'.", this.algorithm), e);
         } catch (NoSuchProviderException e) {
             throw Utils.handleException(OPEN_SEC_MF_007,
                     String.format("Could not initialise SecureRandom with the specified provider : %s. Change "
-                            + "algorithm by system property 'com.wso2.rng.algorithmProvider'.", this.provider), e);
+                            + "provider by configuration property 'totp.provider'.", this.provider), e);
         }
     }
 
@@ -77,15 +90,31 @@ public class TOTPSecureRandom {
      *
      * @param bytes The array to be filled in with random bytes
      */
-    void nextBytes(byte[] bytes) throws OpenSecurityMfException {
-        if (count.incrementAndGet() > MAX_OPERATIONS) {
-            synchronized (this) {
-                if (count.get() > MAX_OPERATIONS) {
-                    buildSecureRandom();
-                    count.set(0);
-                }
+    void nextBytes(byte[] bytes) {
+        // Only the first caller past the limit schedules the rebuild, nobody waits for it.
+        if (count.incrementAndGet() > MAX_OPERATIONS && reseeding.compareAndSet(false, true)) {
+            try {
+                reseedExecutor.execute(this::reseed);
+            } catch (RejectedExecutionException e) {
+                // The executor is shut down or full, reseed on this thread rather than never again.
+                reseed();
             }
         }
         this.secureRandom.nextBytes(bytes);
     }
+
+    /**
+     * Replace the generator with a freshly seeded one.
+     */
+    private void reseed() {
+        try {
+            this.secureRandom = buildSecureRandom();
+            count.set(0);
+        } catch (OpenSecurityMfException e) {
+            // Keep serving from the current generator, the next operation retries.
+            log.error("Error while reseeding the secure random.", e);
+        } finally {
+            reseeding.set(false);
+        }
+    }
 }
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.util;
+
+import org.open.security.mf.authenticator.exception.OpenSecurityMfException;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Stripes secret generation over independently seeded {@link TOTPSecureRandom} instances, so concurrent callers
+ * do not serialize on a single generator. Each thread is mapped to a stripe by its id. Reseeding happens on a
+ * single background thread shared by all stripes.
+ */
+public class TOTPSecureRandomPool {
+
+    private final String algorithm;
+    private final String provider;
+    private final TOTPSecureRandom[] stripes;
+    private final int mask;
+    private final ExecutorService reseedExecutor;
+
+    /**
+     * @param algorithm SecureRandom algorithm
+     * @param provider  SecureRandom provider
+     * @param stripes   number of generators, rounded up to a power of two. 0 for twice the available processors.
+     * @throws OpenSecurityMfException
+     */
+    TOTPSecureRandomPool(String algorithm, String provider, int stripes) throws OpenSecurityMfException {
+
+        this.algorithm = algorithm;
+        this.provider = provider;
+        int size = stripes > 0 ? stripes : 2 * Runtime.getRuntime().availableProcessors();
+        size = size <= 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+        this.reseedExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "totp-secure-random-reseed");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.stripes = new TOTPSecureRandom[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new TOTPSecureRandom(algorithm, provider, reseedExecutor);
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Fill the given array with random bytes from the calling thread's stripe.
+     *
+     * @param bytes The array to be filled in with random bytes
+     */
+    void nextBytes(byte[] bytes) {
+
+        stripe().nextBytes(bytes);
+    }
+
+    /**
+     * @return the SecureRandom algorithm of the stripes
+     */
+    public String getAlgorithm() {
+
+        return algorithm;
+    }
+
+    /**
+     * @return the SecureRandom provider of the stripes
+     */
+    public String getProvider() {
+
+        return provider;
+    }
+
+    /**
+     * @return number of stripes
+     */
+    public int size() {
+
+        return stripes.length;
+    }
+
+    /**
+     * Stop the reseed thread.
+     */
+    void shutdown() {
+
+        reseedExecutor.shutdown();
+    }
+
+    private TOTPSecureRandom stripe() {
+
+        long id = Thread.currentThread().getId();
+        // Spread sequential thread ids over the stripes.
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return stripes[(hash ^ (hash >>> 16)) & mask];
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.open.security.mf.authenticator.exception.OpenSecurityMfException;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.open.security.mf.authenticator.constant.Constants.Error.OPEN_SEC_MF_006;
+
+/**
+ * Picks the fastest available SecureRandom algorithm out of a list of allowed, non-blocking algorithms, by
+ * generating secret sized outputs with each one for a short time.
+ */
+final class TOTPSecureRandomSelector {
+
+    private static final Log log = LogFactory.getLog(TOTPSecureRandomSelector.class);
+    // Output size of a single secret generation.
+    private static final int SAMPLE_BYTES = 10;
+    private static final int WARM_UP_OPERATIONS = 10_000;
+
+    private final String algorithm;
+    private final String provider;
+
+    private TOTPSecureRandomSelector(String algorithm, String provider) {
+
+        this.algorithm = algorithm;
+        this.provider = provider;
+    }
+
+    /**
+     * Benchmark the given algorithms and select the fastest one.
+     *
+     * @param algorithms           allowed algorithms, unavailable ones are skipped
+     * @param measureMillisPerAlgo how long each algorithm is measured for
+     * @return the selected algorithm and its provider
+     * @throws OpenSecurityMfException if none of the algorithms is available
+     */
+    static TOTPSecureRandomSelector select(List<String> algorithms, long measureMillisPerAlgo)
+            throws OpenSecurityMfException {
+
+        String bestAlgorithm = null;
+        String bestProvider = null;
+        double bestThroughput = -1;
+        byte[] sample = new byte[SAMPLE_BYTES];
+        for (String algorithm : algorithms) {
+            SecureRandom secureRandom;
+            try {
+                secureRandom = SecureRandom.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException e) {
+                log.debug("SecureRandom algorithm " + algorithm + " is not available, skipping.");
+                continue;
+            }
+            for (int i = 0; i < WARM_UP_OPERATIONS; i++) {
+                secureRandom.nextBytes(sample);
+            }
+            long operations = 0;
+            long start = System.nanoTime();
+            long end = start + TimeUnit.MILLISECONDS.toNanos(measureMillisPerAlgo);
+            long now;
+            do {
+                for (int i = 0; i < 100; i++) {
+                    secureRandom.nextBytes(sample);
+                }
+                operations += 100;
+                now = System.nanoTime();
+            } while (now < end);
+            double throughput = operations * 1_000_000_000D / (now - start);
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("SecureRandom %s (%s) : %.0f ops/s", algorithm,
+                        secureRandom.getProvider().getName(), throughput));
+            }
+            if (throughput > bestThroughput) {
+                bestThroughput = throughput;
+                bestAlgorithm = algorithm;
+                bestProvider = secureRandom.getProvider().getName();
+            }
+        }
+        if (bestAlgorithm == null) {
+            throw Utils.handleException(OPEN_SEC_MF_006, String.valueOf(algorithms));
+        }
+        log.info(String.format("Selected SecureRandom algorithm %s from provider %s for TOTP secrets, %.0f ops/s.",
+                bestAlgorithm, bestProvider, bestThroughput));
+        return new TOTPSecureRandomSelector(bestAlgorithm, bestProvider);
+    }
+
+    String getAlgorithm() {
+
+        return algorithm;
+    }
+
+    String getProvider() {
+
+        return provider;
+    }
+}
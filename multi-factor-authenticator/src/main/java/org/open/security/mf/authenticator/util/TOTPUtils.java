@@ -21,20 +21,29 @@ package org.open.security.mf.authenticator.util;
 import org.apache.commons.codec.binary.Base32;
 import org.open.security.mf.authenticator.exception.OpenSecurityMfException;
 
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
-import java.util.Arrays;
-import java.util.concurrent.TimeUnit;
-
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.open.security.mf.authenticator.model.TOTPProfileProperties;
 import org.open.security.mf.authenticator.model.TOTPProperties;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
+import javax.annotation.PreDestroy;
 
-import static org.open.security.mf.authenticator.constant.Constants.Error.OPEN_SEC_MF_008;
-import static org.open.security.mf.authenticator.constant.Constants.Error.OPEN_SEC_MF_009;
+import static org.open.security.mf.authenticator.constant.Constants.Error.OPEN_SEC_MF_011;
+import static org.open.security.mf.authenticator.constant.Constants.TOTP_SECURE_RANDOM_AUTO;
 
 @Component
 public class TOTPUtils {
@@ -43,196 +52,275 @@ public class TOTPUtils {
     TOTPProperties totpProperties;
 
     private static final int SECRET_BITS = 80;
-    private static final int SCRATCH_CODES = 5;
     private static final int SCRATCH_CODE_LENGTH = 8;
-    private static final int BYTES_PER_SCRATCH_CODE = 4;
-    private static final String HMAC_HASH_FUNCTION = "HmacSHA1";
-    private int codeDigits = 6;
-    private int keyModulus = (int) Math.pow(10.0D, codeDigits);
-    private long timeStepSizeInMillis = TimeUnit.SECONDS.toMillis(30L);
-    private int windowSize = 3;
-    private TOTPSecureRandom secureRandom;
+    private static final int SECRET_BYTES = SECRET_BITS / 8;
+    private static final int SECRET_CHARS = SECRET_BYTES * 8 / 5;
+    // Secrets generated per secure random call in bulk generation.
+    private static final int SECRETS_PER_BLOCK = 4096;
+    private static final byte SECRET_SEPARATOR = '\n';
+    private TOTPSecureRandomPool secureRandom;
+    private TOTPSecretReservoir secretReservoir;
+    private TOTPEngine defaultEngine;
+    private Map<String, TOTPEngine> engines;
 
     public TOTPUtils(TOTPProperties totpProperties) throws OpenSecurityMfException {
 
         this.totpProperties = totpProperties;
-        secureRandom = new TOTPSecureRandom(totpProperties.getAlgorithm(), totpProperties.getProvider());
+        String algorithm = totpProperties.getAlgorithm();
+        String provider = totpProperties.getProvider();
+        // Explicitly configured algorithms are used as is, "auto" benchmarks the allowed ones.
+        if (TOTP_SECURE_RANDOM_AUTO.equalsIgnoreCase(algorithm)) {
+            TOTPSecureRandomSelector selector = TOTPSecureRandomSelector.select(
+                    totpProperties.getAutoAlgorithms(), totpProperties.getAutoBenchmarkMillis());
+            algorithm = selector.getAlgorithm();
+            provider = selector.getProvider();
+        }
+        secureRandom = new TOTPSecureRandomPool(algorithm, provider, totpProperties.getRandomStripes());
+        if (totpProperties.isReservoirEnabled()) {
+            secretReservoir = new TOTPSecretReservoir(this::generateSecret, totpProperties.getReservoirCapacity(),
+                    totpProperties.getReservoirLowWaterMark(), totpProperties.getReservoirRefillBatch(),
+                    totpProperties.getReservoirRefillIntervalMillis());
+        }
+        defaultEngine = new TOTPEngine(totpProperties.getHmacAlgorithm(), totpProperties.getDigits(),
+                totpProperties.getTimeStep(), totpProperties.getWindowSize(), totpProperties);
+        // Resolve every profile once, lookups on the request path are a map read.
+        Map<String, TOTPEngine> profileEngines = new HashMap<>();
+        for (Map.Entry<String, TOTPProfileProperties> profile : totpProperties.getProfiles().entrySet()) {
+            TOTPProfileProperties properties = profile.getValue();
+            profileEngines.put(profile.getKey(), new TOTPEngine(properties.getHmacAlgorithm(),
+                    properties.getDigits(), properties.getTimeStep(), properties.getWindowSize(), totpProperties));
+        }
+        engines = Collections.unmodifiableMap(profileEngines);
     }
 
-    public int getKeyModulus() {
+    @PreDestroy
+    public void destroy() {
 
-        return keyModulus;
+        if (secretReservoir != null) {
+            secretReservoir.shutdown();
+        }
+        secureRandom.shutdown();
     }
 
-    public int getWindowSize() {
+    /**
+     * Get the pool secrets are generated from, which exposes the SecureRandom algorithm in use.
+     *
+     * @return the secure random pool
+     */
+    public TOTPSecureRandomPool getSecureRandomPool() {
 
-        return windowSize;
+        return secureRandom;
     }
 
     /**
-     * Generate the credential.
+     * Get the secret reservoir.
      *
-     * @return credential
-     * @throws OpenSecurityMfException
+     * @return the secret reservoir, or null if the reservoir is disabled
      */
-    public String createCredentials() throws OpenSecurityMfException {
+    public TOTPSecretReservoir getSecretReservoir() {
+
+        return secretReservoir;
+    }
 
-        // Allocating a buffer sufficiently large to hold the bytes required by
-        // the secret key and the scratch codes.
-        byte[] buffer = new byte[SECRET_BITS / 8 + SCRATCH_CODES * BYTES_PER_SCRATCH_CODE];
+    public int getKeyModulus() {
 
-        secureRandom.nextBytes(buffer);
+        return defaultEngine.getKeyModulus();
+    }
 
-        // Extracting the bytes making up the secret key.
-        byte[] secretKey = Arrays.copyOf(buffer, SECRET_BITS / 8);
-        return calculateSecretKey(secretKey);
+    public int getWindowSize() {
 
-        // Generating the verification code at time = 0.
-//        int validationCode = calculateValidationCode(secretKey);
+        return defaultEngine.getWindowSize();
     }
 
     /**
-     * This method calculates the secret key given a random byte buffer.
+     * Get the engine of the default configuration.
      *
-     * @param secretKey
-     * @return
+     * @return the default engine
      */
-    private String calculateSecretKey(byte[] secretKey) {
+    public TOTPEngine getEngine() {
 
-        return new Base32().encodeToString(secretKey);
+        return defaultEngine;
     }
 
     /**
-     * This method calculates the validation code at time 0.
+     * Get the engine of the given profile.
      *
-     * @param secretKey The secret key to use.
-     * @return the validation code at time 0.
-     * @throws OpenSecurityMfException
+     * @param profile name of the profile, as configured under totp.profiles
+     * @return the profile's engine
+     * @throws OpenSecurityMfException if no such profile is configured
      */
-    private int calculateValidationCode(byte[] secretKey) throws OpenSecurityMfException {
-        return calculateCode(secretKey, 0);
+    public TOTPEngine getEngine(String profile) throws OpenSecurityMfException {
+
+        TOTPEngine engine = engines.get(profile);
+        if (engine == null) {
+            throw Utils.handleException(OPEN_SEC_MF_011, profile);
+        }
+        return engine;
     }
 
     /**
-     * Calculates the verification code of the provided key at the specified
-     * instant of time.
+     * Generate the credential.
      *
-     * @param key the secret key in binary format
-     * @param tm  the instant of time
-     * @return the validation code for the provided key at the specified instant
-     * of time.
+     * @return credential
      * @throws OpenSecurityMfException
      */
-    private int calculateCode(byte[] key, long tm) throws OpenSecurityMfException {
-
-        // Allocating an array of bytes to represent the specified instant
-        // of time.
-        byte[] data = new byte[8];
-        long value = tm;
+    public String createCredentials() throws OpenSecurityMfException {
 
-        // Converting the instant of time from the long representation to a
-        // big-endian array of bytes (RFC4226, 5.2. Description).
-        for (int i = 8; i-- > 0; value >>>= 8) {
-            data[i] = (byte) value;
+        if (secretReservoir != null) {
+            return secretReservoir.draw();
         }
+        return generateSecret();
+    }
 
-        // Building the secret key specification for the HmacSHA1 algorithm.
-        SecretKeySpec signKey = new SecretKeySpec(key, HMAC_HASH_FUNCTION);
-
-        try {
-            // Getting an HmacSHA1 algorithm implementation from the Java Cryptography Extension(JCE).
-            Mac mac = Mac.getInstance(HMAC_HASH_FUNCTION);
-
-            // Initializing the MAC algorithm.
-            mac.init(signKey);
-
-            // Processing the instant of time and getting the encrypted data.
-            byte[] hash = mac.doFinal(data);
+    /**
+     * Generate a new secret from the secure random.
+     *
+     * @return Base32 encoded secret
+     */
+    private String generateSecret() {
 
-            // Building the validation code performing dynamic truncation
-            // (RFC4226, 5.3. Generating an HOTP value)
-            int offset = hash[hash.length - 1] & 0xF;
+        // Scratch codes are not issued, so only the bytes of the secret key are drawn.
+        byte[] secretKey = new byte[SECRET_BYTES];
 
-            // We are using a long because Java hasn't got an unsigned integer type
-            // and we need 32 unsigned bits).
-            long truncatedHash = 0;
+        secureRandom.nextBytes(secretKey);
 
-            for (int i = 0; i < 4; ++i) {
-                truncatedHash <<= 8;
+        return calculateSecretKey(secretKey);
+    }
 
-                // Java bytes are signed but we need an unsigned integer:
-                // cleaning off all but the LSB.
-                truncatedHash |= (hash[offset + i] & 0xFF);
+    /**
+     * Stream the given number of new secrets. Random bytes are drawn for {@value #SECRETS_PER_BLOCK} secrets at a
+     * time, and each secret is encoded straight from the block into its string.
+     *
+     * @param count number of secrets
+     * @return stream of Base32 encoded secrets
+     * @throws IllegalArgumentException if the count is negative
+     */
+    public Stream<String> streamSecrets(long count) {
+
+        checkSecretCount(count);
+        return StreamSupport.stream(new Spliterators.AbstractSpliterator<String>(count,
+                Spliterator.ORDERED | Spliterator.SIZED | Spliterator.NONNULL | Spliterator.IMMUTABLE) {
+
+            private final byte[] random = new byte[SECRETS_PER_BLOCK * SECRET_BYTES];
+            private final byte[] encoded = new byte[SECRETS_PER_BLOCK * SECRET_CHARS];
+            private long remaining = count;
+            private int available;
+            private int position;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super String> action) {
+
+                if (position == available) {
+                    if (remaining == 0) {
+                        return false;
+                    }
+                    available = (int) Math.min(remaining, SECRETS_PER_BLOCK);
+                    remaining -= available;
+                    position = 0;
+                    nextSecretBlock(random, encoded, available, false);
+                }
+                action.accept(new String(encoded, position++ * SECRET_CHARS, SECRET_CHARS,
+                        StandardCharsets.US_ASCII));
+                return true;
             }
+        }, false);
+    }
 
-            // Clean bits higher than the 32nd (inclusive) and calculate the
-            // module with the maximum validation code value.
-            truncatedHash &= 0x7FFFFFFF;
-            truncatedHash %= keyModulus;
-
-            // Returning the validation code to the caller.
-            return (int) truncatedHash;
-        } catch (NoSuchAlgorithmException e) {
-            throw Utils.handleException(OPEN_SEC_MF_008, null, e);
-        } catch (InvalidKeyException e) {
-            throw Utils.handleException(OPEN_SEC_MF_009, null, e);
+    /**
+     * Write the given number of new secrets to the stream, one ASCII secret per line. Memory use is a single
+     * block regardless of the count.
+     *
+     * @param count number of secrets
+     * @param out   stream to write to
+     * @throws IOException
+     * @throws IllegalArgumentException if the count is negative
+     */
+    public void writeSecrets(long count, OutputStream out) throws IOException {
+
+        checkSecretCount(count);
+        byte[] random = new byte[SECRETS_PER_BLOCK * SECRET_BYTES];
+        byte[] encoded = new byte[SECRETS_PER_BLOCK * (SECRET_CHARS + 1)];
+        for (long remaining = count; remaining > 0; ) {
+            int secrets = (int) Math.min(remaining, SECRETS_PER_BLOCK);
+            out.write(encoded, 0, nextSecretBlock(random, encoded, secrets, true));
+            remaining -= secrets;
         }
     }
 
     /**
-     * This method implements the algorithm specified in RFC 6238 to check if a validation code is
-     * valid in a given instant of time for the given secret key.
+     * Write the given number of new secrets to the channel, one ASCII secret per line.
      *
-     * @param secret    The Base32 encoded secret key
-     * @param code      The code to validate
-     * @param timestamp The instant of time to use during the validation process
-     * @return <code>true</code> if the validation code is valid, <code>false</code> otherwise
-     * @throws OpenSecurityMfException
+     * @param count   number of secrets
+     * @param channel channel to write to
+     * @throws IOException
+     * @throws IllegalArgumentException if the count is negative
+     * @see #writeSecrets(long, OutputStream)
      */
-    public boolean checkCode(String secret, long code, long timestamp) throws OpenSecurityMfException {
-
-        byte[] decodedKey = decodeSecret(secret);
+    public void writeSecrets(long count, WritableByteChannel channel) throws IOException {
+
+        checkSecretCount(count);
+        byte[] random = new byte[SECRETS_PER_BLOCK * SECRET_BYTES];
+        byte[] encoded = new byte[SECRETS_PER_BLOCK * (SECRET_CHARS + 1)];
+        ByteBuffer buffer = ByteBuffer.wrap(encoded);
+        for (long remaining = count; remaining > 0; ) {
+            int secrets = (int) Math.min(remaining, SECRETS_PER_BLOCK);
+            buffer.clear().limit(nextSecretBlock(random, encoded, secrets, true));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            remaining -= secrets;
+        }
+    }
 
-        // convert unix time into a 30 second "window" as specified by the TOTP specification.
-        // Using default interval of 30 seconds.
-        final long timeWindow = getTimeWindowFromTime(timestamp);
+    private static void checkSecretCount(long count) {
 
-        // Calculating the verification code of the given key in each of the
-        // time intervals and returning true if the provided code is equal to
-        // one of them.
-        for (int i = -((windowSize - 1) / 2); i <= windowSize / 2; ++i) {
-            // Calculating the verification code for the current time interval.
-            long hash = calculateCode(decodedKey, timeWindow + i);
+        if (count < 0) {
+            throw new IllegalArgumentException("Secret count must not be negative : " + count);
+        }
+    }
 
-            // Checking if the provided code is equal to the calculated one.
-            if (hash == code) {
-                // The verification code is valid.
-                return true;
+    /**
+     * Fill the random block in one call and encode the given number of secrets from it.
+     *
+     * @return number of encoded bytes
+     */
+    private int nextSecretBlock(byte[] random, byte[] encoded, int secrets, boolean separate) {
+
+        secureRandom.nextBytes(random);
+        int position = 0;
+        for (int i = 0; i < secrets; i++) {
+            TOTPBase32.encode(random, i * SECRET_BYTES, SECRET_BYTES, encoded, position);
+            position += SECRET_CHARS;
+            if (separate) {
+                encoded[position++] = SECRET_SEPARATOR;
             }
         }
-        // The verification code is invalid.
-        return false;
+        return position;
     }
 
     /**
-     * ecode the secret key.
+     * This method calculates the secret key given a random byte buffer.
      *
-     * @param secret
+     * @param secretKey
      * @return
      */
-    private byte[] decodeSecret(String secret) {
+    private String calculateSecretKey(byte[] secretKey) {
 
-        Base32 codec32 = new Base32();
-        return codec32.decode(secret);
+        return new Base32().encodeToString(secretKey);
     }
 
     /**
-     * Get time window form time.
+     * This method implements the algorithm specified in RFC 6238 to check if a validation code is
+     * valid in a given instant of time for the given secret key, using the default configuration.
      *
-     * @param time time in millisecond
-     * @return time window form time
+     * @param secret    The Base32 encoded secret key
+     * @param code      The code to validate
+     * @param timestamp The instant of time to use during the validation process
+     * @return <code>true</code> if the validation code is valid, <code>false</code> otherwise
+     * @throws OpenSecurityMfException
      */
-    private long getTimeWindowFromTime(long time) {
-        return time / timeStepSizeInMillis;
+    public boolean checkCode(String secret, long code, long timestamp) throws OpenSecurityMfException {
+
+        return defaultEngine.checkCode(secret, code, timestamp);
     }
 }
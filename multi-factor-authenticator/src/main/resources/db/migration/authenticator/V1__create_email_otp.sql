@@ -0,0 +1,12 @@
+CREATE TABLE EMAIL_OTP (
+  ID INT AUTO_INCREMENT PRIMARY KEY,
+  EMAIL_ADDRESS VARCHAR(250) NOT NULL,
+  OTP VARCHAR(250) NOT NULL,
+  STATUS VARCHAR(20) DEFAULT NULL,
+  EXPIRY_TIME BIGINT NOT NULL
+);
+
+-- OTPRepository.findByOTP looks up by both columns.
+CREATE INDEX IDX_EMAIL_OTP_EMAIL_OTP ON EMAIL_OTP (EMAIL_ADDRESS, OTP);
+-- Range scans over expired OTPs.
+CREATE INDEX IDX_EMAIL_OTP_EXPIRY_TIME ON EMAIL_OTP (EXPIRY_TIME);
@@ -0,0 +1,8 @@
+-- INACTIVE_ID is 0 while the OTP is active and the row's ID once it is used or revoked. The unique index allows a
+-- single active OTP per address, so concurrent issues for the same address can't both leave an active row. The
+-- column is never NULL, since some databases check a unique index against every NULL entry.
+UPDATE EMAIL_OTP SET STATUS = 'REVOKED' WHERE STATUS = 'ACTIVE'
+  AND ID NOT IN (SELECT MAX(ID) FROM EMAIL_OTP WHERE STATUS = 'ACTIVE' GROUP BY EMAIL_ADDRESS);
+ALTER TABLE EMAIL_OTP ADD COLUMN INACTIVE_ID INT DEFAULT 0 NOT NULL;
+UPDATE EMAIL_OTP SET INACTIVE_ID = ID WHERE STATUS IS NULL OR STATUS <> 'ACTIVE';
+CREATE UNIQUE INDEX UK_EMAIL_OTP_ACTIVE ON EMAIL_OTP (EMAIL_ADDRESS, INACTIVE_ID);
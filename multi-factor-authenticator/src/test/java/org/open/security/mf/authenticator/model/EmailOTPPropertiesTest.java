@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.model;
+
+import org.junit.Test;
+import org.open.security.mf.authenticator.exception.OpenSecurityMfException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.open.security.mf.authenticator.constant.Constants.Error.OPEN_SEC_MF_015;
+
+/**
+ * Checks that startup validation accepts the known email OTP stores only.
+ */
+public class EmailOTPPropertiesTest {
+
+    @Test
+    public void acceptsKnownStores() throws OpenSecurityMfException {
+
+        EmailOTPProperties emailOTPProperties = new EmailOTPProperties();
+        emailOTPProperties.validate();
+        for (String store : new String[]{"jpa", "JDBC", "memory", "Mapped"}) {
+            emailOTPProperties.setStore(store);
+            emailOTPProperties.validate();
+        }
+    }
+
+    @Test
+    public void rejectsUnknownStore() {
+
+        EmailOTPProperties emailOTPProperties = new EmailOTPProperties();
+        emailOTPProperties.setStore("redis");
+        try {
+            emailOTPProperties.validate();
+            fail("redis is not a store");
+        } catch (OpenSecurityMfException e) {
+            assertEquals(OPEN_SEC_MF_015.getMessage(), e.getMessage());
+        }
+    }
+}
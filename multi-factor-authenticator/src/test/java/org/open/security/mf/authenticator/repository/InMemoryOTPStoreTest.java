@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.repository;
+
+import org.junit.After;
+import org.junit.Test;
+import org.open.security.mf.authenticator.constant.Constants;
+import org.open.security.mf.authenticator.exception.OpenSecurityMfException;
+import org.open.security.mf.authenticator.model.EmailOTPProperties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.open.security.mf.authenticator.constant.Constants.Error.OPEN_SEC_MF_015;
+
+/**
+ * Checks that {@link InMemoryOTPStore} keeps one OTP per address, in the map and in the timing wheel, and expires it.
+ */
+public class InMemoryOTPStoreTest {
+
+    private static final String EMAIL = "user@example.com";
+
+    private InMemoryOTPStore store;
+
+    @After
+    public void tearDown() {
+
+        if (store != null) {
+            store.destroy();
+        }
+    }
+
+    @Test
+    public void reissueReplacesTheWheelEntry() throws OpenSecurityMfException {
+
+        store = new InMemoryOTPStore(new EmailOTPProperties());
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 100; i++) {
+            store.issue(EMAIL, "otp" + i, now + 60000 + i * 1000L);
+        }
+        assertEquals(1, store.size());
+        assertEquals(1, store.getScheduled());
+        assertEquals(Constants.OTPValidationStatus.INVALID, store.consume("otp0", EMAIL, now));
+        assertEquals(Constants.OTPValidationStatus.VALID, store.consume("otp99", EMAIL, now));
+        assertEquals(Constants.OTPValidationStatus.USED, store.consume("otp99", EMAIL, now));
+    }
+
+    @Test
+    public void removesExpiredOTPs() throws OpenSecurityMfException, InterruptedException {
+
+        EmailOTPProperties emailOTPProperties = new EmailOTPProperties();
+        emailOTPProperties.setStoreWheelTickMillis(10);
+        store = new InMemoryOTPStore(emailOTPProperties);
+        long now = System.currentTimeMillis();
+        store.issue(EMAIL, "abc123", now + 20);
+        assertEquals(Constants.OTPValidationStatus.EXPIRED, store.consume("abc123", EMAIL, now + 20));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (store.size() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, store.size());
+        assertEquals(0, store.getScheduled());
+    }
+
+    @Test
+    public void rejectsNonPositiveTick() {
+
+        EmailOTPProperties emailOTPProperties = new EmailOTPProperties();
+        emailOTPProperties.setStoreWheelTickMillis(0);
+        try {
+            store = new InMemoryOTPStore(emailOTPProperties);
+            fail("a tick of 0 is not allowed");
+        } catch (OpenSecurityMfException e) {
+            assertEquals(OPEN_SEC_MF_015.getMessage(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.repository;
+
+import org.flywaydb.core.Flyway;
+import org.junit.Before;
+import org.junit.Test;
+import org.open.security.mf.authenticator.constant.Constants;
+import org.open.security.mf.authenticator.model.EmailOTPProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks {@link JdbcOTPStore}, and with it the logic {@link TableOTPStore} shares with the jpa store, against the
+ * migrated EMAIL_OTP table on an in-memory H2 database.
+ */
+public class JdbcOTPStoreTest {
+
+    private static final String EMAIL = "user@example.com";
+    private static final int THREADS = 8;
+
+    private DriverManagerDataSource dataSource;
+
+    @Before
+    public void setUp() {
+
+        dataSource = new DriverManagerDataSource("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa",
+                "");
+        Flyway.configure().dataSource(dataSource).locations("classpath:db/migration/authenticator").load()
+                .migrate();
+    }
+
+    @Test
+    public void reportsExpiredWithTheFilterOn() {
+
+        EmailOTPProperties emailOTPProperties = new EmailOTPProperties();
+        emailOTPProperties.setFilterEnabled(true);
+        emailOTPProperties.setPurgeRetentionMillis(60000);
+        JdbcOTPStore store = store(emailOTPProperties);
+
+        long now = System.currentTimeMillis();
+        store.issue(EMAIL, "abc123", now + 1000);
+        assertEquals(Constants.OTPValidationStatus.EXPIRED, store.consume("abc123", EMAIL, now + 2000));
+        // Never issued pairs are still rejected by the filter.
+        assertEquals(Constants.OTPValidationStatus.INVALID, store.consume("zzz999", EMAIL, now + 2000));
+        assertEquals(1, store.getLookupFilter().getRejected());
+        // Past the retention the row may have been purged, so the filter rejects it.
+        assertEquals(Constants.OTPValidationStatus.INVALID, store.consume("abc123", EMAIL, now + 62000));
+    }
+
+    @Test
+    public void reportsWhyAnOTPWasNotConsumed() {
+
+        JdbcOTPStore store = store(new EmailOTPProperties());
+        long now = System.currentTimeMillis();
+        store.issue(EMAIL, "abc123", now + 60000);
+        store.issue(EMAIL, "def456", now + 60000);
+
+        assertEquals(Constants.OTPValidationStatus.REVOKED, store.consume("abc123", EMAIL, now));
+        assertEquals(Constants.OTPValidationStatus.VALID, store.consume("def456", EMAIL, now));
+        assertEquals(Constants.OTPValidationStatus.USED, store.consume("def456", EMAIL, now));
+        assertEquals(Constants.OTPValidationStatus.INVALID, store.consume("zzz999", EMAIL, now));
+    }
+
+    @Test
+    public void consumesConcurrentlyOnce() throws Exception {
+
+        JdbcOTPStore store = store(new EmailOTPProperties());
+        long now = System.currentTimeMillis();
+        store.issue(EMAIL, "abc123", now + 60000);
+
+        List<Constants.OTPValidationStatus> statuses = concurrently(THREADS,
+                () -> store.consume("abc123", EMAIL, now));
+        assertEquals(1, statuses.stream().filter(Constants.OTPValidationStatus.VALID::equals).count());
+        assertEquals(THREADS - 1, statuses.stream().filter(Constants.OTPValidationStatus.USED::equals).count());
+    }
+
+    @Test
+    public void keepsOneActiveOTPUnderConcurrentIssues() throws Exception {
+
+        JdbcOTPStore store = store(new EmailOTPProperties());
+        long now = System.currentTimeMillis();
+        AtomicInteger issued = new AtomicInteger();
+        // An issue loses at most once per concurrent issue, so as many threads as attempts always succeed.
+        concurrently(3, () -> {
+            store.issue(EMAIL, "otp" + issued.incrementAndGet(), now + 60000);
+            return null;
+        });
+
+        assertEquals(1, (int) jdbcTemplate().queryForObject("SELECT COUNT(*) FROM EMAIL_OTP "
+                + "WHERE EMAIL_ADDRESS = ? AND STATUS = 'ACTIVE'", Integer.class, EMAIL));
+        String active = store.findActive(EMAIL, now);
+        assertEquals(Constants.OTPValidationStatus.VALID, store.consume(active, EMAIL, now));
+    }
+
+    @Test
+    public void purgesAtMostTheLimit() {
+
+        JdbcOTPStore store = store(new EmailOTPProperties());
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 5; i++) {
+            store.issue("user" + i + "@example.com", "abc123", now - 1000);
+        }
+        store.issue(EMAIL, "abc123", now + 60000);
+
+        assertEquals(3, store.purgeExpired(now, 3));
+        assertEquals(2, store.purgeExpired(now, 3));
+        assertEquals(0, store.purgeExpired(now, 3));
+        assertEquals("abc123", store.findActive(EMAIL, now));
+    }
+
+    private JdbcOTPStore store(EmailOTPProperties emailOTPProperties) {
+
+        JdbcOTPStore store = new JdbcOTPStore(new JdbcTemplate(dataSource),
+                new TransactionTemplate(new DataSourceTransactionManager(dataSource)), emailOTPProperties);
+        store.init();
+        return store;
+    }
+
+    private JdbcTemplate jdbcTemplate() {
+
+        return new JdbcTemplate(dataSource);
+    }
+
+    private static <T> List<T> concurrently(int threads, Callable<T> task) throws Exception {
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<T>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return task.call();
+                }));
+            }
+            start.countDown();
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
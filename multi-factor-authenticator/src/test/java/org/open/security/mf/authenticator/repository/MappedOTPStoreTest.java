@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.repository;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.open.security.mf.authenticator.constant.Constants;
+import org.open.security.mf.authenticator.exception.OpenSecurityMfException;
+import org.open.security.mf.authenticator.model.EmailOTPProperties;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.open.security.mf.authenticator.constant.Constants.Error.OPEN_SEC_MF_015;
+
+/**
+ * Checks that the mapped store keeps one OTP per address across a reopen of its file, and sweeps its expired slots
+ * on its own schedule with the purger disabled.
+ */
+public class MappedOTPStoreTest {
+
+    private static final String EMAIL = "user@example.com";
+
+    private Path storeFile;
+    private EmailOTPProperties emailOTPProperties;
+    private MappedOTPStore store;
+
+    @Before
+    public void setUp() throws IOException, OpenSecurityMfException {
+
+        storeFile = Files.createTempFile("email-otp", ".store");
+        emailOTPProperties = new EmailOTPProperties();
+        emailOTPProperties.setStore(Constants.EMAIL_OTP_STORE_MAPPED);
+        emailOTPProperties.setStoreFile(storeFile.toString());
+        emailOTPProperties.setStoreSlots(64);
+        emailOTPProperties.setPurgeIntervalMillis(200);
+        store = new MappedOTPStore(emailOTPProperties);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+
+        store.destroy();
+        Files.delete(storeFile);
+    }
+
+    @Test
+    public void sweepsExpiredSlotsWithoutThePurger() throws InterruptedException {
+
+        long now = System.currentTimeMillis();
+        store.issue(EMAIL, "abc123", now - 1);
+        assertEquals(Constants.OTPValidationStatus.EXPIRED, store.consume("abc123", EMAIL, now));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (store.consume("abc123", EMAIL, System.currentTimeMillis())
+                == Constants.OTPValidationStatus.EXPIRED && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(Constants.OTPValidationStatus.INVALID,
+                store.consume("abc123", EMAIL, System.currentTimeMillis()));
+    }
+
+    @Test
+    public void reissueReplacesTheEarlierOTP() {
+
+        long now = System.currentTimeMillis();
+        store.issue(EMAIL, "abc123", now + 60000);
+        store.issue(EMAIL, "def456", now + 60000);
+
+        assertEquals("def456", store.findActive(EMAIL, now));
+        assertEquals(Constants.OTPValidationStatus.INVALID, store.consume("abc123", EMAIL, now));
+        assertEquals(Constants.OTPValidationStatus.VALID, store.consume("def456", EMAIL, now));
+        assertEquals(Constants.OTPValidationStatus.USED, store.consume("def456", EMAIL, now));
+        assertNull(store.findActive(EMAIL, now));
+    }
+
+    @Test
+    public void survivesAReopen() throws OpenSecurityMfException {
+
+        long now = System.currentTimeMillis();
+        store.issue(EMAIL, "abc123", now + 60000);
+        store.issue("other@example.com", "def456", now + 60000);
+        store.consume("def456", "other@example.com", now);
+        store.destroy();
+
+        store = new MappedOTPStore(emailOTPProperties);
+        assertEquals(Constants.OTPValidationStatus.VALID, store.consume("abc123", EMAIL, now));
+        assertEquals(Constants.OTPValidationStatus.USED, store.consume("def456", "other@example.com", now));
+    }
+
+    @Test
+    public void rejectsSlotCountsThatAreNotAPowerOfTwo() {
+
+        emailOTPProperties.setStoreSlots(100);
+        try {
+            new MappedOTPStore(emailOTPProperties);
+            fail("100 slots is not a power of two");
+        } catch (OpenSecurityMfException e) {
+            assertEquals(OPEN_SEC_MF_015.getMessage(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.service;
+
+import org.apache.commons.codec.binary.Base32;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.open.security.mf.authenticator.constant.Constants.TOTPValidationStatus;
+import org.open.security.mf.authenticator.model.TOTPProperties;
+import org.open.security.mf.authenticator.model.TOTPValidationRequest;
+import org.open.security.mf.authenticator.util.TOTPUtils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the batch validation of {@link TOTPServiceImpl}, which splits the requests by secret across a fork-join
+ * pool, against codes calculated with the JCE HmacSHA1.
+ */
+public class TOTPServiceImplTest {
+
+    private static final long TIMESTAMP = 1111111109000L;
+    // Enough secrets for the batch to be split into several fork-join tasks.
+    private static final int SECRETS = 50;
+
+    private TOTPServiceImpl totpService;
+
+    @Before
+    public void setUp() throws Exception {
+
+        TOTPProperties totpProperties = new TOTPProperties();
+        totpProperties.setAlgorithm("SHA1PRNG");
+        totpProperties.setProvider("SUN");
+        totpProperties.setBatchParallelism(4);
+        totpService = new TOTPServiceImpl();
+        totpService.totpProperties = totpProperties;
+        totpService.totpUtils = new TOTPUtils(totpProperties);
+        totpService.init();
+    }
+
+    @After
+    public void tearDown() {
+
+        totpService.destroy();
+        totpService.totpUtils.destroy();
+    }
+
+    @Test
+    public void validatesEachRequestOfTheBatch() throws Exception {
+
+        Random random = new Random(5);
+        Base32 base32 = new Base32();
+        List<TOTPValidationRequest> requests = new ArrayList<>();
+        List<TOTPValidationStatus> expected = new ArrayList<>();
+        for (int s = 0; s < SECRETS; s++) {
+            byte[] key = new byte[10];
+            random.nextBytes(key);
+            String secret = base32.encodeToString(key);
+            // Current, previous and next time step are in the window of 3, two steps back is not.
+            for (int step = -2; step <= 1; step++) {
+                long timestamp = TIMESTAMP + step * 30_000L;
+                requests.add(new TOTPValidationRequest(secret, code(key, TIMESTAMP), timestamp));
+                expected.add(step == -2 ? TOTPValidationStatus.INVALID : TOTPValidationStatus.VALID);
+            }
+        }
+        requests.add(null);
+        expected.add(TOTPValidationStatus.ERROR);
+        requests.add(new TOTPValidationRequest(null, 123456, TIMESTAMP));
+        expected.add(TOTPValidationStatus.ERROR);
+        requests.add(new TOTPValidationRequest("GEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQ", 0, TIMESTAMP));
+        expected.add(TOTPValidationStatus.INVALID);
+        requests.add(new TOTPValidationRequest("GEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQ", 1_000_000, TIMESTAMP));
+        expected.add(TOTPValidationStatus.INVALID);
+
+        TOTPValidationStatus[] results = totpService.validateCodes(requests);
+
+        assertEquals(requests.size(), results.length);
+        for (int i = 0; i < results.length; i++) {
+            assertEquals("request " + i, expected.get(i), results[i]);
+        }
+    }
+
+    /**
+     * RFC 6238 code of the key at the given time, 6 digits and 30 second steps.
+     */
+    private static int code(byte[] key, long timestamp) throws Exception {
+
+        Mac mac = Mac.getInstance("HmacSHA1");
+        mac.init(new SecretKeySpec(key, "HmacSHA1"));
+        byte[] hash = mac.doFinal(ByteBuffer.allocate(8).putLong(timestamp / 30_000L).array());
+        int offset = hash[hash.length - 1] & 0xf;
+        return (ByteBuffer.wrap(hash, offset, 4).getInt() & 0x7fffffff) % 1_000_000;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.util;
+
+import org.junit.After;
+import org.junit.Test;
+import org.open.security.mf.authenticator.exception.OpenSecurityMfException;
+import org.open.security.mf.authenticator.model.EmailOTPProperties;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link EmailOTPDispatcher} retries failed sends, runtime failures included, and gives up after the
+ * last attempt.
+ */
+public class EmailOTPDispatcherTest {
+
+    private EmailOTPDispatcher dispatcher;
+
+    @After
+    public void tearDown() {
+
+        dispatcher.destroy();
+    }
+
+    @Test
+    public void retriesRuntimeFailures() throws OpenSecurityMfException, InterruptedException {
+
+        dispatcher = new EmailOTPDispatcher(properties(3));
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch sent = new CountDownLatch(1);
+        dispatcher.dispatch("user@example.com", () -> {
+            if (calls.incrementAndGet() < 3) {
+                throw new IllegalStateException("connection reset");
+            }
+            sent.countDown();
+        });
+
+        assertTrue(sent.await(5, TimeUnit.SECONDS));
+        waitFor(() -> dispatcher.getSent() == 1);
+        assertEquals(2, dispatcher.getRetried());
+        assertEquals(0, dispatcher.getFailed());
+    }
+
+    @Test
+    public void givesUpAfterManyAttempts() throws OpenSecurityMfException, InterruptedException {
+
+        // Enough attempts that an unclamped backoff shift would overflow.
+        dispatcher = new EmailOTPDispatcher(properties(70));
+        AtomicInteger calls = new AtomicInteger();
+        dispatcher.dispatch("user@example.com", () -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException("connection reset");
+        });
+
+        waitFor(() -> dispatcher.getFailed() == 1);
+        assertEquals(70, calls.get());
+        assertEquals(69, dispatcher.getRetried());
+        assertEquals(0, dispatcher.getSent());
+    }
+
+    private static EmailOTPProperties properties(int maxAttempts) {
+
+        EmailOTPProperties emailOTPProperties = new EmailOTPProperties();
+        emailOTPProperties.setAsyncEnabled(true);
+        emailOTPProperties.setAsyncWorkers(1);
+        emailOTPProperties.setAsyncMaxAttempts(maxAttempts);
+        emailOTPProperties.setAsyncInitialBackoffMillis(1000);
+        emailOTPProperties.setAsyncMaxBackoffMillis(1);
+        return emailOTPProperties;
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
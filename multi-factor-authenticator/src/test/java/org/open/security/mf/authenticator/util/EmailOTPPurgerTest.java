@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.util;
+
+import org.flywaydb.core.Flyway;
+import org.junit.Before;
+import org.junit.Test;
+import org.open.security.mf.authenticator.constant.Constants;
+import org.open.security.mf.authenticator.model.EmailOTPProperties;
+import org.open.security.mf.authenticator.repository.JdbcOTPStore;
+import org.open.security.mf.authenticator.repository.OTPStore;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that {@link EmailOTPPurger} deletes OTPs expired longer than the retention ago in bounded batches, and
+ * survives a failing store.
+ */
+public class EmailOTPPurgerTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private JdbcOTPStore store;
+    private EmailOTPProperties emailOTPProperties;
+
+    @Before
+    public void setUp() {
+
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:" + UUID.randomUUID()
+                + ";DB_CLOSE_DELAY=-1", "sa", "");
+        Flyway.configure().dataSource(dataSource).locations("classpath:db/migration/authenticator").load()
+                .migrate();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        emailOTPProperties = new EmailOTPProperties();
+        emailOTPProperties.setPurgeBatchSize(10);
+        emailOTPProperties.setPurgeMaxBatches(2);
+        emailOTPProperties.setPurgeRetentionMillis(60000);
+        store = new JdbcOTPStore(jdbcTemplate, new TransactionTemplate(new DataSourceTransactionManager(dataSource)),
+                emailOTPProperties);
+    }
+
+    @Test
+    public void purgesInBoundedBatches() {
+
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 25; i++) {
+            store.issue("expired" + i + "@example.com", "abc123", now - 120000);
+        }
+        // Expired, but within the retention.
+        store.issue("retained@example.com", "abc123", now - 30000);
+        store.issue("active@example.com", "abc123", now + 60000);
+        EmailOTPPurger purger = new EmailOTPPurger(store, emailOTPProperties);
+
+        assertEquals(20, purger.sweep());
+        assertEquals(5, purger.sweep());
+        assertEquals(0, purger.sweep());
+        assertEquals(25, purger.getRowsPurged());
+        assertEquals(3, purger.getSweeps());
+        assertEquals(2, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM EMAIL_OTP", Integer.class));
+        assertEquals(Constants.OTPValidationStatus.EXPIRED, store.consume("abc123", "retained@example.com", now));
+    }
+
+    @Test
+    public void survivesAFailingStore() {
+
+        OTPStore failing = new OTPStore() {
+
+            @Override
+            public void issue(String email, String otp, long expiryTime) {
+
+            }
+
+            @Override
+            public String findActive(String email, long expiryTime) {
+
+                return null;
+            }
+
+            @Override
+            public Constants.OTPValidationStatus consume(String otp, String email, long now) {
+
+                return Constants.OTPValidationStatus.INVALID;
+            }
+
+            @Override
+            public int purgeExpired(long expiryTime, int limit) {
+
+                throw new IllegalStateException("database unavailable");
+            }
+        };
+        EmailOTPPurger purger = new EmailOTPPurger(failing, emailOTPProperties);
+
+        assertEquals(0, purger.sweep());
+        assertEquals(1, purger.getSweeps());
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that {@link EmailTemplate} escapes substituted values in HTML and only in HTML.
+ */
+public class EmailTemplateTest {
+
+    private static final String EMAIL = "\"><script>alert('x')</script>&@example.com";
+
+    @Test
+    public void escapesValuesInHtml() {
+
+        EmailTemplate template = EmailTemplate.compile("<p title=\"{{email.address}}\">{{email.otp}}</p>",
+                "{{email.otp}}", "{{email.address}}");
+        assertEquals("<p title=\"&quot;&gt;&lt;script&gt;alert(&#39;x&#39;)&lt;/script&gt;&amp;@example.com\">"
+                + "abc123</p>", template.renderHtml("abc123", EMAIL));
+    }
+
+    @Test
+    public void keepsValuesInPlainText() {
+
+        EmailTemplate template = EmailTemplate.compile("Code {{email.otp}} for {{email.address}}.",
+                "{{email.otp}}", "{{email.address}}");
+        assertEquals("Code abc123 for " + EMAIL + ".", template.render("abc123", EMAIL));
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link OTPLookupFilter} keeps a fixed number of issued pairs and lets lookups through while full.
+ */
+public class OTPLookupFilterTest {
+
+    @Test
+    public void removesExpiredPairs() {
+
+        OTPLookupFilter filter = new OTPLookupFilter(100, 0.01);
+        filter.add("a@example.com", "123456", 10);
+        filter.add("b@example.com", "654321", 20);
+        assertTrue(filter.mightContain("a@example.com", "123456"));
+        assertFalse(filter.mightContain("a@example.com", "000000"));
+
+        assertEquals(1, filter.expire(10));
+        assertFalse(filter.mightContain("a@example.com", "123456"));
+        assertTrue(filter.mightContain("b@example.com", "654321"));
+    }
+
+    @Test
+    public void letsLookupsThroughWhileFull() {
+
+        OTPLookupFilter filter = new OTPLookupFilter(2, 0.01);
+        long size = filter.getSizeInBytes();
+        filter.add("a@example.com", "1", 10);
+        filter.add("b@example.com", "2", 20);
+        filter.add("c@example.com", "3", 30);
+        filter.add("d@example.com", "4", 40);
+        assertEquals(2, filter.getOverflows());
+        assertEquals(size, filter.getSizeInBytes());
+        // The untracked pairs could be live, so nothing is rejected until they have expired.
+        assertTrue(filter.mightContain("c@example.com", "3"));
+        assertTrue(filter.mightContain("x@example.com", "0"));
+
+        filter.expire(39);
+        assertTrue(filter.mightContain("x@example.com", "0"));
+        filter.expire(40);
+        assertFalse(filter.mightContain("x@example.com", "0"));
+        assertFalse(filter.mightContain("d@example.com", "4"));
+    }
+
+    @Test
+    public void countsIssuedPairsInSize() {
+
+        OTPLookupFilter filter = new OTPLookupFilter(100_000, 0.01);
+        // 24 bytes per issued pair on top of the counters.
+        assertTrue(filter.getSizeInBytes() >= 100_000 * 24L);
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.open.security.mf.authenticator.model.SMTPProperties;
+import org.open.security.mf.smtp.SMTPServer;
+import org.open.security.mf.smtp.SMTPServerSettings;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.mail.Message;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Sends batches through {@link SMTPBatchSender} to the embedded {@link SMTPServer} and checks that a batch reuses
+ * one connection and that shutdown sends what is queued.
+ */
+public class SMTPBatchSenderTest {
+
+    private static final int MESSAGES = 40;
+
+    private SMTPServer server;
+    private AnnotationConfigApplicationContext context;
+    private SMTPTransportPool transportPool;
+    private SMTPBatchSender batchSender;
+
+    @Before
+    public void setUp() throws IOException {
+
+        server = new SMTPServer(0, new SMTPServerSettings());
+        server.start();
+        SMTPProperties smtpProperties = new SMTPProperties();
+        smtpProperties.setHost("localhost");
+        smtpProperties.setPort(server.getPort());
+        smtpProperties.setPoolSize(2);
+        smtpProperties.setBatchEnabled(true);
+        smtpProperties.setBatchSize(MESSAGES);
+        smtpProperties.setBatchLingerMillis(200);
+        smtpProperties.setBatchSenders(2);
+        context = new AnnotationConfigApplicationContext();
+        context.registerBean(SMTPProperties.class, () -> smtpProperties);
+        context.register(SMTPTransportPool.class);
+        context.refresh();
+        transportPool = context.getBean(SMTPTransportPool.class);
+        batchSender = new SMTPBatchSender(transportPool, smtpProperties);
+    }
+
+    @After
+    public void tearDown() {
+
+        batchSender.destroy();
+        context.close();
+        server.stop();
+    }
+
+    @Test
+    public void sendsABatchOverOneConnection() throws Exception {
+
+        ExecutorService callers = Executors.newFixedThreadPool(MESSAGES);
+        try {
+            List<Future<?>> sent = new ArrayList<>();
+            for (int i = 0; i < MESSAGES; i++) {
+                Message message = message(i);
+                sent.add(callers.submit(() -> {
+                    batchSender.send(message);
+                    return null;
+                }));
+            }
+            for (Future<?> future : sent) {
+                future.get();
+            }
+        } finally {
+            callers.shutdown();
+        }
+
+        assertTrue(server.awaitMessages(MESSAGES, 5000));
+        assertEquals(MESSAGES, batchSender.getBatchedMessages());
+        // Each batch takes a single pooled transport, which is reused rather than reconnected.
+        assertTrue(batchSender.getBatches() < MESSAGES);
+        assertTrue(server.getConnections() <= 2);
+        assertEquals(0, transportPool.getActiveCount());
+    }
+
+    @Test
+    public void sendsQueuedMessagesOnShutdown() throws Exception {
+
+        Thread caller = new Thread(() -> {
+            try {
+                batchSender.send(message(0));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        caller.start();
+        // Lingering for more messages when shutdown starts.
+        Thread.sleep(50);
+        batchSender.destroy();
+        caller.join(5000);
+
+        assertFalse(caller.isAlive());
+        assertTrue(server.awaitMessages(1, 5000));
+        assertEquals(1, batchSender.getBatchedMessages());
+        // After shutdown messages go straight to the pool.
+        batchSender.send(message(1));
+        assertTrue(server.awaitMessages(2, 5000));
+        assertEquals(1, batchSender.getBatchedMessages());
+    }
+
+    private Message message(int index) throws Exception {
+
+        MimeMessage message = new MimeMessage(transportPool.getSession());
+        message.setFrom(new InternetAddress("sender@example.com"));
+        message.setRecipient(Message.RecipientType.TO, new InternetAddress("user" + index + "@example.com"));
+        message.setSubject("Email verification");
+        message.setText("Message " + index);
+        return message;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.open.security.mf.authenticator.exception.OpenSecurityMfException;
+import org.open.security.mf.authenticator.model.EmailOTPProperties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.open.security.mf.authenticator.constant.Constants.EMAIL_OTP_MODE_STATELESS;
+import static org.open.security.mf.authenticator.constant.Constants.Error.OPEN_SEC_MF_004;
+
+/**
+ * Checks that a stateless OTP resent after its OTP was used is a new, valid OTP.
+ */
+public class StatelessEmailOTPTest {
+
+    private static final String EMAIL = "user@example.com";
+
+    private StatelessEmailOTP statelessEmailOTP;
+
+    @Before
+    public void setUp() throws OpenSecurityMfException {
+
+        EmailOTPProperties emailOTPProperties = new EmailOTPProperties();
+        emailOTPProperties.setMode(EMAIL_OTP_MODE_STATELESS);
+        emailOTPProperties.setExpiry(3600);
+        emailOTPProperties.setLength(6);
+        emailOTPProperties.setCharset("abcdefhijklmnopqrstuvwxyz0123456789");
+        emailOTPProperties.setStatelessKey("MDEyMzQ1Njc4OWFiY2RlZjAxMjM0NTY3ODlhYmNkZWY=");
+        statelessEmailOTP = new StatelessEmailOTP(emailOTPProperties);
+    }
+
+    @After
+    public void tearDown() {
+
+        statelessEmailOTP.destroy();
+    }
+
+    @Test
+    public void resendBeforeUseMailsTheSameOTP() {
+
+        assertEquals(statelessEmailOTP.generate(EMAIL), statelessEmailOTP.generate(EMAIL));
+    }
+
+    @Test
+    public void resendAfterUseMailsANewOTP() throws OpenSecurityMfException {
+
+        String first = statelessEmailOTP.generate(EMAIL);
+        assertTrue(statelessEmailOTP.validate(first, EMAIL));
+        String second = statelessEmailOTP.generate(EMAIL);
+        assertNotEquals(first, second);
+        assertUsed(first);
+        assertTrue(statelessEmailOTP.validate(second, EMAIL));
+        assertUsed(second);
+        String third = statelessEmailOTP.generate(EMAIL);
+        assertNotEquals(first, third);
+        assertNotEquals(second, third);
+        assertTrue(statelessEmailOTP.validate(third, EMAIL));
+    }
+
+    private void assertUsed(String otp) {
+
+        try {
+            statelessEmailOTP.validate(otp, EMAIL);
+            fail("Used OTP " + otp + " validated again");
+        } catch (OpenSecurityMfException e) {
+            assertEquals(OPEN_SEC_MF_004.getMessage(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.util;
+
+import org.apache.commons.codec.binary.Base32;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks {@link TOTPBase32} against commons-codec's {@link Base32}, which encoded the secrets already stored.
+ */
+public class TOTPBase32Test {
+
+    // Alphabet characters weighted over padding, characters outside the alphabet and non ASCII characters.
+    private static final String INPUT_CHARACTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567ABCDEFGHIJKLMNOPQRSTUVWXYZ234567"
+            + "= 0189abz-\né€";
+
+    @Test
+    public void encodesLikeCommonsCodec() {
+
+        Random random = new Random(4648);
+        Base32 base32 = new Base32();
+        for (int i = 0; i < 20_000; i++) {
+            byte[] src = new byte[5 * random.nextInt(8)];
+            random.nextBytes(src);
+            byte[] dst = new byte[src.length * 8 / 5];
+            TOTPBase32.encode(src, 0, src.length, dst, 0);
+            assertEquals(base32.encodeToString(src), new String(dst, StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Test
+    public void decodesEncodedSecretsLikeCommonsCodec() {
+
+        Random random = new Random(4648);
+        Base32 base32 = new Base32();
+        for (int i = 0; i < 20_000; i++) {
+            byte[] key = new byte[random.nextInt(64)];
+            random.nextBytes(key);
+            String secret = base32.encodeToString(key);
+            assertArrayEquals(secret, key, decode(secret));
+        }
+    }
+
+    @Test
+    public void decodesArbitraryInputLikeCommonsCodec() {
+
+        Random random = new Random(4648);
+        Base32 base32 = new Base32();
+        char[] characters = INPUT_CHARACTERS.toCharArray();
+        for (int i = 0; i < 20_000; i++) {
+            char[] input = new char[random.nextInt(48)];
+            for (int j = 0; j < input.length; j++) {
+                input[j] = characters[random.nextInt(characters.length)];
+            }
+            String secret = new String(input);
+            assertArrayEquals(secret, base32.decode(secret), decode(secret));
+        }
+    }
+
+    private static byte[] decode(String secret) {
+
+        byte[] buffer = new byte[TOTPBase32.maxDecodedLength(secret)];
+        int length = TOTPBase32.decode(secret, buffer);
+        assertTrue(length <= buffer.length);
+        return Arrays.copyOf(buffer, length);
+    }
+}
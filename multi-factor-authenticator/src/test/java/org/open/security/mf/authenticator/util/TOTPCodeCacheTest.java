@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.util;
+
+import org.junit.Test;
+import org.open.security.mf.authenticator.exception.OpenSecurityMfException;
+import org.open.security.mf.authenticator.model.TOTPProperties;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link TOTPCodeCache} only serves codes of the current time step, and that a caching
+ * {@link TOTPEngine} accepts the same codes as an uncached one.
+ */
+public class TOTPCodeCacheTest {
+
+    private static final String SECRET = "GEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQ";
+    // RFC 6238 SHA1 vector at T = 1111111109 s, truncated to 6 digits.
+    private static final long TIMESTAMP = 1111111109000L;
+    private static final long CODE = 81804;
+
+    @Test
+    public void servesCodesOfTheSameTimeStep() {
+
+        TOTPCodeCache cache = new TOTPCodeCache(10);
+        TOTPSecretDigest digest = TOTPSecretDigest.of(SECRET);
+        int[] codes = {1, 2, 3};
+        assertNull(cache.get(digest, 100));
+        cache.put(digest, 100, codes);
+
+        assertArrayEquals(codes, cache.get(digest, 100));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void evictsEarlierTimeSteps() {
+
+        TOTPCodeCache cache = new TOTPCodeCache(10);
+        TOTPSecretDigest digest = TOTPSecretDigest.of(SECRET);
+        cache.put(digest, 100, new int[]{1});
+        assertNull(cache.get(digest, 101));
+        assertEquals(0, cache.size());
+        // Codes of a step before the latest one seen are not cached.
+        cache.put(digest, 100, new int[]{1});
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void cachesNothingWhileFull() {
+
+        TOTPCodeCache cache = new TOTPCodeCache(1);
+        cache.put(TOTPSecretDigest.of(SECRET), 100, new int[]{1});
+        cache.put(TOTPSecretDigest.of("JBSWY3DPEHPK3PXP"), 100, new int[]{2});
+        assertEquals(1, cache.size());
+        assertNull(cache.get(TOTPSecretDigest.of("JBSWY3DPEHPK3PXP"), 100));
+    }
+
+    @Test
+    public void cachingEngineAcceptsTheSameCodes() throws OpenSecurityMfException {
+
+        TOTPProperties totpProperties = new TOTPProperties();
+        totpProperties.setCacheEnabled(true);
+        TOTPEngine cached = new TOTPEngine("HmacSHA1", 6, 30, 3, totpProperties);
+        TOTPEngine uncached = new TOTPEngine("HmacSHA1", 6, 30, 3, new TOTPProperties());
+
+        for (int i = 0; i < 2; i++) {
+            assertTrue(cached.checkCode(SECRET, CODE, TIMESTAMP));
+            assertFalse(cached.checkCode(SECRET, CODE + 1, TIMESTAMP));
+        }
+        assertTrue(uncached.checkCode(SECRET, CODE, TIMESTAMP));
+        assertEquals(1, cached.getCodeCache().getMisses());
+        assertEquals(3, cached.getCodeCache().getHits());
+    }
+}
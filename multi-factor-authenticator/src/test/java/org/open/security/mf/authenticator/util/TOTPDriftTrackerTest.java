@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link TOTPDriftTracker} stays bounded by evicting its least recently validated secrets.
+ */
+public class TOTPDriftTrackerTest {
+
+    @Test
+    public void evictsLeastRecentlyValidatedSecret() {
+
+        TOTPDriftTracker tracker = new TOTPDriftTracker(3, 2, 0);
+        TOTPSecretDigest first = TOTPSecretDigest.of("GEZDGNBVGY3TQOJQ");
+        TOTPSecretDigest second = TOTPSecretDigest.of("GEZDGNBVGY3TQOJR");
+        TOTPSecretDigest third = TOTPSecretDigest.of("GEZDGNBVGY3TQOJS");
+        tracker.recordMatch(first, null, 0, 1);
+        tracker.recordMatch(second, null, 1, 3);
+        // Validating the first secret again makes the second the least recently validated.
+        assertNotNull(tracker.get(first));
+        tracker.recordMatch(third, null, -1, 2);
+
+        assertEquals(2, tracker.size());
+        assertEquals(1, tracker.getEvictions());
+        assertNull(tracker.get(second));
+        assertEquals(0, tracker.get(first).getOffset());
+        assertEquals(-1, tracker.get(third).getOffset());
+    }
+
+    @Test
+    public void staysWithinMaxEntries() {
+
+        int maxEntries = 10_000;
+        TOTPDriftTracker tracker = new TOTPDriftTracker(3, maxEntries, 0);
+        for (int i = 0; i < maxEntries * 3; i++) {
+            tracker.recordMatch(TOTPSecretDigest.of("SECRET" + i), null, 0, 1);
+        }
+        assertTrue(tracker.size() <= maxEntries);
+        assertEquals(maxEntries * 3 - tracker.size(), tracker.getEvictions());
+    }
+}
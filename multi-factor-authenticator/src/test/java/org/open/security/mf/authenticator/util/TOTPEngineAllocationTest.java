@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.util;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.open.security.mf.authenticator.exception.OpenSecurityMfException;
+import org.open.security.mf.authenticator.model.TOTPProperties;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.open.security.mf.authenticator.constant.Constants.TOTP_HMAC_ENGINE_BUILTIN;
+import static org.open.security.mf.authenticator.constant.Constants.TOTP_HMAC_ENGINE_JCE;
+
+/**
+ * Allocation budget of {@link TOTPEngine#checkCode(String, long, long)} in steady state, measured with the
+ * thread allocation counter of the HotSpot {@link com.sun.management.ThreadMXBean}.
+ */
+public class TOTPEngineAllocationTest {
+
+    private static final String SECRET = "GEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQ";
+    private static final long TIMESTAMP = 1111111109000L;
+    private static final int WARMUP_CALLS = 200_000;
+    private static final int MEASURED_CALLS = 100_000;
+    // The JCE copies the key into a SecretKeySpec and its internal state on every Mac.init.
+    private static final long JCE_BUDGET_BYTES_PER_CALL = 256;
+
+    private com.sun.management.ThreadMXBean threadMXBean;
+
+    @Before
+    public void setUp() {
+
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @Test
+    public void builtinCheckCodeAllocatesNothing() throws Exception {
+
+        TOTPEngine engine = newEngine(TOTP_HMAC_ENGINE_BUILTIN);
+        long bytesPerCall = allocatedBytesPerCall(engine);
+        assertEquals("builtin checkCode allocated " + bytesPerCall + " B/call", 0, bytesPerCall);
+    }
+
+    @Test
+    public void jceCheckCodeStaysWithinBudget() throws Exception {
+
+        TOTPEngine engine = newEngine(TOTP_HMAC_ENGINE_JCE);
+        long bytesPerCall = allocatedBytesPerCall(engine);
+        assertTrue("jce checkCode allocated " + bytesPerCall + " B/call",
+                bytesPerCall <= JCE_BUDGET_BYTES_PER_CALL);
+    }
+
+    private static TOTPEngine newEngine(String hmacEngine) throws OpenSecurityMfException {
+
+        TOTPProperties totpProperties = new TOTPProperties();
+        totpProperties.setHmacEngine(hmacEngine);
+        return new TOTPEngine("HmacSHA1", 6, 30, 3, totpProperties);
+    }
+
+    /**
+     * Average bytes allocated by a rejected code, which calculates the code of every time step in the window.
+     */
+    private long allocatedBytesPerCall(TOTPEngine engine) throws OpenSecurityMfException {
+
+        // The code of a 6 digit TOTP is never 10^6, so every call checks the whole window.
+        long invalidCode = 1_000_000;
+        for (int i = 0; i < WARMUP_CALLS; i++) {
+            assertFalse(engine.checkCode(SECRET, invalidCode, TIMESTAMP + i));
+        }
+        long threadId = Thread.currentThread().getId();
+        // Subtracts what reading the counter itself allocates.
+        long start = threadMXBean.getThreadAllocatedBytes(threadId);
+        long overhead = threadMXBean.getThreadAllocatedBytes(threadId) - start;
+        start = threadMXBean.getThreadAllocatedBytes(threadId);
+        boolean valid = false;
+        for (int i = 0; i < MEASURED_CALLS; i++) {
+            valid |= engine.checkCode(SECRET, invalidCode, TIMESTAMP + i);
+        }
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - start - overhead;
+        assertFalse(valid);
+        return allocated / MEASURED_CALLS;
+    }
+}
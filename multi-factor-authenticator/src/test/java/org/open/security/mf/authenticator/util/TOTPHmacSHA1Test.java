@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.util;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the built-in {@link TOTPHmacSHA1} against the RFC 6238 test vectors and the JCE HmacSHA1.
+ */
+public class TOTPHmacSHA1Test {
+
+    // RFC 6238, Appendix B. Test Vectors, SHA1 rows: time in seconds and the 8 digit TOTP.
+    private static final byte[] RFC_6238_KEY = "12345678901234567890".getBytes(StandardCharsets.US_ASCII);
+    private static final long[][] RFC_6238_VECTORS = {
+            {59L, 94287082},
+            {1111111109L, 7081804},
+            {1111111111L, 14050471},
+            {1234567890L, 89005924},
+            {2000000000L, 69279037},
+            {20000000000L, 65353130}
+    };
+    private static final int RFC_6238_TIME_STEP = 30;
+    private static final int RFC_6238_MODULUS = 100_000_000;
+
+    @Test
+    public void matchesRfc6238Vectors() throws Exception {
+
+        TOTPHmacSHA1 hmac = new TOTPHmacSHA1();
+        hmac.init(RFC_6238_KEY, 0, RFC_6238_KEY.length);
+        for (long[] vector : RFC_6238_VECTORS) {
+            long counter = vector[0] / RFC_6238_TIME_STEP;
+            assertEquals("T = " + vector[0], vector[1], hmac.truncatedHash(counter) % RFC_6238_MODULUS);
+        }
+    }
+
+    @Test
+    public void jceHmacMatchesRfc6238Vectors() throws Exception {
+
+        TOTPJceHmac hmac = new TOTPJceHmac("HmacSHA1");
+        hmac.init(RFC_6238_KEY, 0, RFC_6238_KEY.length);
+        for (long[] vector : RFC_6238_VECTORS) {
+            long counter = vector[0] / RFC_6238_TIME_STEP;
+            assertEquals("T = " + vector[0], vector[1], hmac.truncatedHash(counter) % RFC_6238_MODULUS);
+        }
+    }
+
+    @Test
+    public void matchesJceForRandomKeysAndCounters() throws Exception {
+
+        Random random = new Random(6238);
+        Mac jce = Mac.getInstance("HmacSHA1");
+        TOTPHmacSHA1 hmac = new TOTPHmacSHA1();
+        byte[] counterBytes = new byte[8];
+        // Key lengths cover the empty key, keys up to the block size and keys longer than it, which are hashed.
+        for (int i = 0; i < 20_000; i++) {
+            byte[] key = new byte[random.nextInt(160)];
+            random.nextBytes(key);
+            // Keys are loaded at an offset to check that only the given range is used.
+            int offset = random.nextInt(4);
+            byte[] buffer = new byte[offset + key.length + random.nextInt(4)];
+            random.nextBytes(buffer);
+            System.arraycopy(key, 0, buffer, offset, key.length);
+            hmac.init(buffer, offset, key.length);
+            jce.init(new SecretKeySpec(key.length == 0 ? new byte[1] : key, "HmacSHA1"));
+            if (key.length == 0) {
+                // SecretKeySpec rejects empty keys, a single zero byte is the same HMAC key once padded.
+                assertEquals(jceTruncatedHash(jce, counterBytes, 0L), hmac.truncatedHash(0L));
+                continue;
+            }
+            for (int j = 0; j < 4; j++) {
+                long counter = random.nextLong();
+                assertEquals("key length " + key.length + ", counter " + counter,
+                        jceTruncatedHash(jce, counterBytes, counter), hmac.truncatedHash(counter));
+            }
+        }
+    }
+
+    private static int jceTruncatedHash(Mac mac, byte[] counterBytes, long counter) {
+
+        long value = counter;
+        for (int i = 8; i-- > 0; value >>>= 8) {
+            counterBytes[i] = (byte) value;
+        }
+        byte[] hash = mac.doFinal(counterBytes);
+        int offset = hash[hash.length - 1] & 0xF;
+        return ((hash[offset] & 0x7F) << 24) | ((hash[offset + 1] & 0xFF) << 16)
+                | ((hash[offset + 2] & 0xFF) << 8) | (hash[offset + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.util;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link TOTPSecretReservoir} refills in bounded batches up to its capacity, refills early below the
+ * low-water mark and falls back to the caller's thread when empty.
+ */
+public class TOTPSecretReservoirTest {
+
+    private static final long HOUR_MILLIS = 3_600_000;
+
+    private final AtomicInteger generated = new AtomicInteger();
+    private final Set<String> generatorThreads = new HashSet<>();
+    private TOTPSecretReservoir reservoir;
+
+    @After
+    public void tearDown() {
+
+        reservoir.shutdown();
+    }
+
+    @Test
+    public void refillsUpToCapacity() throws InterruptedException {
+
+        reservoir = new TOTPSecretReservoir(this::generate, 10, 3, 4, 10);
+        waitFor(() -> reservoir.size() == 10);
+        Thread.sleep(50);
+        assertEquals(10, reservoir.size());
+        assertEquals(10, reservoir.getRefilled());
+
+        Set<String> drawn = new HashSet<>();
+        for (int i = 0; i < 10; i++) {
+            drawn.add(reservoir.draw());
+        }
+        assertEquals(10, drawn.size());
+    }
+
+    @Test
+    public void refillsBelowTheLowWaterMark() throws InterruptedException {
+
+        // Only the initial run is scheduled within the test, so the second refill comes from the low-water mark.
+        reservoir = new TOTPSecretReservoir(this::generate, 10, 3, 4, HOUR_MILLIS);
+        waitFor(() -> reservoir.size() == 4);
+        reservoir.draw();
+        reservoir.draw();
+
+        waitFor(() -> reservoir.size() == 6);
+        assertEquals(1, reservoir.getLowWaterMarkHits());
+        assertEquals(8, reservoir.getRefilled());
+        assertEquals(0, reservoir.getMisses());
+    }
+
+    @Test
+    public void generatesOnTheCallerWhenEmpty() {
+
+        reservoir = new TOTPSecretReservoir(this::generate, 0, 0, 4, HOUR_MILLIS);
+        reservoir.draw();
+        reservoir.shutdown();
+        reservoir.draw();
+
+        assertEquals(2, reservoir.getMisses());
+        assertEquals(2, reservoir.getDraws());
+        synchronized (generatorThreads) {
+            assertEquals(Collections.singleton(Thread.currentThread().getName()), generatorThreads);
+        }
+    }
+
+    private String generate() {
+
+        synchronized (generatorThreads) {
+            generatorThreads.add(Thread.currentThread().getName());
+        }
+        return "SECRET" + generated.incrementAndGet();
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
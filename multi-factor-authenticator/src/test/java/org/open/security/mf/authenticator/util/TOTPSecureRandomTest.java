@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.util;
+
+import org.junit.Test;
+import org.open.security.mf.authenticator.exception.OpenSecurityMfException;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that {@link TOTPSecureRandom} still reseeds when its executor rejects the rebuild.
+ */
+public class TOTPSecureRandomTest {
+
+    @Test
+    public void reseedsInlineWhenRejected() throws OpenSecurityMfException {
+
+        AtomicInteger rejected = new AtomicInteger();
+        TOTPSecureRandom secureRandom = new TOTPSecureRandom("SHA1PRNG", "SUN", task -> {
+            rejected.incrementAndGet();
+            throw new RejectedExecutionException("shut down");
+        });
+        byte[] bytes = new byte[1];
+        for (int i = 0; i <= 1_000_000; i++) {
+            secureRandom.nextBytes(bytes);
+        }
+        assertEquals(1, rejected.get());
+        // Reseeded inline, so the count starts over rather than rescheduling on every operation.
+        secureRandom.nextBytes(bytes);
+        assertEquals(1, rejected.get());
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.util;
+
+import org.apache.commons.codec.binary.Base32;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.open.security.mf.authenticator.exception.OpenSecurityMfException;
+import org.open.security.mf.authenticator.model.TOTPProperties;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the bulk secret generation of {@link TOTPUtils}: every secret is a distinct 80-bit Base32 secret,
+ * across block boundaries and for each output.
+ */
+public class TOTPUtilsSecretsTest {
+
+    // More than one block of 4096 secrets.
+    private static final int COUNT = 4097;
+
+    private TOTPUtils totpUtils;
+
+    @Before
+    public void setUp() throws OpenSecurityMfException {
+
+        TOTPProperties totpProperties = new TOTPProperties();
+        totpProperties.setAlgorithm("SHA1PRNG");
+        totpProperties.setProvider("SUN");
+        totpUtils = new TOTPUtils(totpProperties);
+    }
+
+    @After
+    public void tearDown() {
+
+        totpUtils.destroy();
+    }
+
+    @Test
+    public void streamsDistinctSecrets() {
+
+        assertSecrets(totpUtils.streamSecrets(COUNT).collect(Collectors.toList()));
+        assertEquals(0, totpUtils.streamSecrets(0).count());
+    }
+
+    @Test
+    public void writesOneSecretPerLine() throws IOException {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        totpUtils.writeSecrets(COUNT, out);
+        assertSecrets(lines(out));
+
+        out.reset();
+        totpUtils.writeSecrets(COUNT, Channels.newChannel(out));
+        assertSecrets(lines(out));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeCounts() {
+
+        totpUtils.streamSecrets(-1);
+    }
+
+    private static List<String> lines(ByteArrayOutputStream out) {
+
+        String written = new String(out.toByteArray(), StandardCharsets.US_ASCII);
+        assertTrue(written.endsWith("\n"));
+        return Arrays.asList(written.split("\n"));
+    }
+
+    private static void assertSecrets(List<String> secrets) {
+
+        assertEquals(COUNT, secrets.size());
+        Set<String> distinct = new HashSet<>(secrets);
+        assertEquals(COUNT, distinct.size());
+        Base32 base32 = new Base32();
+        for (String secret : secrets) {
+            assertEquals(16, secret.length());
+            assertEquals(secret, base32.encodeToString(base32.decode(secret)));
+            assertEquals(10, base32.decode(secret).length);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.repository;
+
+import org.flywaydb.core.Flyway;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the {@link OTPRepository#findByOTP(String, String)} query against the row count of EMAIL_OTP, on an
+ * embedded H2 database migrated like the demo one.
+ * <p>
+ * Without the indexes is the table as Hibernate created it before the migrations: no index the query can use.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OTPLookupBenchmark {
+
+    private static final String URL = "jdbc:h2:mem:otp-lookup";
+    private static final String FIND_BY_OTP = "SELECT * FROM EMAIL_OTP WHERE OTP = ? AND EMAIL_ADDRESS = ?";
+    private static final String INSERT = "INSERT INTO EMAIL_OTP (EMAIL_ADDRESS, OTP, STATUS, EXPIRY_TIME) "
+            + "VALUES (?, ?, 'ACTIVE', ?)";
+    private static final int INSERT_BATCH_SIZE = 1000;
+
+    @Param({"10000", "100000", "1000000"})
+    public int rows;
+
+    @Param({"true", "false"})
+    public boolean indexed;
+
+    private Connection connection;
+    private PreparedStatement findByOTP;
+
+    @Setup
+    public void setUp() throws SQLException {
+
+        connection = DriverManager.getConnection(URL, "sa", "");
+        Flyway.configure().dataSource(URL, "sa", "").locations("classpath:db/migration/authenticator").load()
+                .migrate();
+        if (!indexed) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("DROP INDEX IDX_EMAIL_OTP_EMAIL_OTP");
+                statement.execute("DROP INDEX UK_EMAIL_OTP_ACTIVE");
+            }
+        }
+        long expiryTime = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1);
+        try (PreparedStatement insert = connection.prepareStatement(INSERT)) {
+            for (int i = 0; i < rows; i++) {
+                insert.setString(1, email(i));
+                insert.setString(2, otp(i));
+                insert.setLong(3, expiryTime);
+                insert.addBatch();
+                if ((i + 1) % INSERT_BATCH_SIZE == 0) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+        findByOTP = connection.prepareStatement(FIND_BY_OTP);
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+
+        connection.close();
+    }
+
+    @Benchmark
+    public boolean findByOTP() throws SQLException {
+
+        int row = ThreadLocalRandom.current().nextInt(rows);
+        findByOTP.setString(1, otp(row));
+        findByOTP.setString(2, email(row));
+        try (ResultSet resultSet = findByOTP.executeQuery()) {
+            return resultSet.next();
+        }
+    }
+
+    private static String email(int row) {
+
+        return "user" + row + "@example.com";
+    }
+
+    private static String otp(int row) {
+
+        return Integer.toString(row * 7919 % 1_000_000, 36);
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.repository;
+
+import org.open.security.mf.authenticator.constant.Constants;
+import org.open.security.mf.authenticator.model.EmailOTPProperties;
+import org.open.security.mf.authenticator.model.OTP;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the {@link OTPStore} operations of each email.otp.store, with the stores wired by Spring as in the demo
+ * and the database ones on an embedded H2 database.
+ * <p>
+ * OTPs are issued round robin over a fixed set of addresses, so each issue also revokes the address's earlier OTP.
+ * The cost of consuming an OTP is issueAndConsume less issue. Run with -prof gc for the bytes allocated per
+ * operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OTPStoreBenchmark {
+
+    private static final int EMAILS = 10_000;
+    private static final int OTPS = 1 << 16;
+    private static final long EXPIRY_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    @Param({"jpa", "jdbc", "memory", "mapped"})
+    public String store;
+
+    private Path storeFile;
+    private ConfigurableApplicationContext context;
+    private OTPStore otpStore;
+    // Built up front so the allocations measured are the store's.
+    private final String[] emails = new String[EMAILS];
+    private final String[] otps = new String[OTPS];
+    private int issued;
+
+    @Setup
+    public void setUp() throws IOException {
+
+        storeFile = Files.createTempFile("email-otp", ".store");
+        context = SpringApplication.run(StoreConfiguration.class,
+                "--spring.main.web-application-type=none",
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN",
+                "--spring.datasource.url=jdbc:h2:mem:otp-store",
+                "--spring.flyway.locations=classpath:db/migration/authenticator",
+                "--spring.jpa.hibernate.ddl-auto=validate",
+                "--email.otp.store=" + store,
+                "--email.otp.store-file=" + storeFile);
+        otpStore = context.getBean(OTPStore.class);
+        for (int i = 0; i < EMAILS; i++) {
+            emails[i] = "user" + i + "@example.com";
+        }
+        for (int i = 0; i < OTPS; i++) {
+            otps[i] = Integer.toString(i, 36);
+        }
+        // Every address starts with an active OTP for findActive.
+        for (int i = 0; i < EMAILS; i++) {
+            issue();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+
+        context.close();
+        Files.delete(storeFile);
+    }
+
+    @Benchmark
+    public String issue() {
+
+        int n = issued++;
+        String otp = otps[n % OTPS];
+        otpStore.issue(emails[n % EMAILS], otp, System.currentTimeMillis() + EXPIRY_MILLIS);
+        return otp;
+    }
+
+    @Benchmark
+    public Constants.OTPValidationStatus issueAndConsume() {
+
+        int n = issued;
+        String otp = issue();
+        return otpStore.consume(otp, emails[n % EMAILS], System.currentTimeMillis());
+    }
+
+    @Benchmark
+    public Constants.OTPValidationStatus consumeInvalid() {
+
+        // Never issued, OTPs are lower case.
+        return otpStore.consume("INVALID", emails[issued++ % EMAILS], System.currentTimeMillis());
+    }
+
+    @Benchmark
+    public String findActive() {
+
+        return otpStore.findActive(emails[issued++ % EMAILS], System.currentTimeMillis());
+    }
+
+    /**
+     * The stores and what they need, without the rest of the authenticator.
+     */
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    @EntityScan(basePackageClasses = OTP.class)
+    @EnableJpaRepositories(basePackageClasses = OTPRepository.class)
+    @Import({EmailOTPProperties.class, JpaOTPStore.class, JdbcOTPStore.class, InMemoryOTPStore.class,
+            MappedOTPStore.class})
+    static class StoreConfiguration {
+
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.util;
+
+import org.open.security.mf.authenticator.exception.OpenSecurityMfException;
+import org.open.security.mf.authenticator.model.EmailOTPProperties;
+import org.open.security.mf.authenticator.model.SMTPProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+import static org.open.security.mf.authenticator.constant.Constants.EMAIL_ADDRESS_PACE_HOLDER;
+import static org.open.security.mf.authenticator.constant.Constants.EMAIL_OTP_PLACE_HOLDER;
+
+/**
+ * Cost of rendering an email OTP body and building the message, with the demo templates.
+ * <p>
+ * The replace and unprepared benchmarks are the code before {@link EmailTemplate} and
+ * {@link EmailOTPMessageFactory}: two String.replace calls per body, and the addresses and subject resolved for
+ * every message. Messages are built up to saveChanges, which generates the MIME headers, without sending them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EmailOTPMessageBenchmark {
+
+    private static final String BODY = "Please click on the link : http://localhost:8080/open-security-demo/user/"
+            + "confirm-account?otp={{email.otp}}&email={{email.address}} to verify.";
+    private static final String HTML_BODY = "<p>Please click <a href=\"http://localhost:8080/open-security-demo/"
+            + "user/confirm-account?otp={{email.otp}}&email={{email.address}}\">here</a> to verify.</p>";
+    private static final String SUBJECT = "Email verification";
+    private static final String FROM = "noreply@example.com";
+    private static final String EMAIL = "user@example.com";
+    private static final String OTP = "a1b2c3";
+
+    private final Session session = Session.getInstance(new Properties());
+    private EmailTemplate body;
+    private EmailTemplate htmlBody;
+    private EmailOTPMessageFactory messageFactory;
+
+    @Setup
+    public void setUp() throws OpenSecurityMfException {
+
+        body = EmailTemplate.compile(BODY, EMAIL_OTP_PLACE_HOLDER, EMAIL_ADDRESS_PACE_HOLDER);
+        htmlBody = EmailTemplate.compile(HTML_BODY, EMAIL_OTP_PLACE_HOLDER, EMAIL_ADDRESS_PACE_HOLDER);
+        EmailOTPProperties emailOTPProperties = new EmailOTPProperties();
+        emailOTPProperties.setBody(BODY);
+        emailOTPProperties.setSubject(SUBJECT);
+        SMTPProperties smtpProperties = new SMTPProperties();
+        smtpProperties.setUsername(FROM);
+        // Only the session of the pool is used, so no transport is ever opened.
+        messageFactory = new EmailOTPMessageFactory(emailOTPProperties, smtpProperties, new SMTPTransportPool() {
+            @Override
+            public Session getSession() {
+
+                return session;
+            }
+        });
+    }
+
+    @Benchmark
+    public String renderReplace() {
+
+        return BODY.replace(EMAIL_OTP_PLACE_HOLDER, OTP).replace(EMAIL_ADDRESS_PACE_HOLDER, EMAIL);
+    }
+
+    @Benchmark
+    public String render() {
+
+        return body.render(OTP, EMAIL);
+    }
+
+    @Benchmark
+    public String renderHtml() {
+
+        return htmlBody.renderHtml(OTP, EMAIL);
+    }
+
+    @Benchmark
+    public Message createMessageUnprepared() throws MessagingException {
+
+        Message message = new MimeMessage(session);
+        message.setFrom(new InternetAddress(FROM));
+        message.setRecipient(Message.RecipientType.TO, new InternetAddress(EMAIL));
+        message.setSubject(SUBJECT);
+        message.setText(renderReplace());
+        message.saveChanges();
+        return message;
+    }
+
+    @Benchmark
+    public Message createMessage() throws MessagingException {
+
+        Message message = messageFactory.createMessage(EMAIL, OTP);
+        message.saveChanges();
+        return message;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.util;
+
+import org.apache.commons.codec.binary.Base32;
+import org.open.security.mf.authenticator.exception.OpenSecurityMfException;
+import org.open.security.mf.authenticator.model.TOTPProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Cost of rejecting a TOTP code, which calculates the code of every time step in a window of 3.
+ * <p>
+ * unpooled is the check before {@link TOTPMacPool}: the secret decoded, and a Mac looked up and keyed, for every
+ * time step. jce and builtin go through {@link TOTPEngine} with the respective totp.hmac-engine.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TOTPEngineBenchmark {
+
+    private static final String SECRET = "GEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQ";
+    private static final long TIMESTAMP = 1111111109000L;
+    // The code of a 6 digit TOTP is never 10^6, so every check computes the whole window.
+    private static final long INVALID_CODE = 1_000_000;
+    private static final long TIME_STEP_MILLIS = 30_000;
+
+    @Param({"unpooled", "jce", "builtin"})
+    public String hmacEngine;
+
+    private TOTPEngine engine;
+
+    @Setup
+    public void setUp() throws OpenSecurityMfException {
+
+        if (!"unpooled".equals(hmacEngine)) {
+            TOTPProperties totpProperties = new TOTPProperties();
+            totpProperties.setHmacEngine(hmacEngine);
+            engine = new TOTPEngine("HmacSHA1", 6, 30, 3, totpProperties);
+        }
+    }
+
+    @Benchmark
+    public boolean checkCode() throws Exception {
+
+        return engine != null ? engine.checkCode(SECRET, INVALID_CODE, TIMESTAMP)
+                : checkCodeUnpooled(SECRET, INVALID_CODE, TIMESTAMP);
+    }
+
+    private static boolean checkCodeUnpooled(String secret, long code, long timestamp)
+            throws GeneralSecurityException {
+
+        byte[] key = new Base32().decode(secret);
+        long timeWindow = timestamp / TIME_STEP_MILLIS;
+        for (int i = -1; i <= 1; i++) {
+            byte[] data = new byte[8];
+            long value = timeWindow + i;
+            for (int j = 8; j-- > 0; value >>>= 8) {
+                data[j] = (byte) value;
+            }
+            Mac mac = Mac.getInstance("HmacSHA1");
+            mac.init(new SecretKeySpec(key, "HmacSHA1"));
+            byte[] hash = mac.doFinal(data);
+            int offset = hash[hash.length - 1] & 0xF;
+            long truncatedHash = 0;
+            for (int j = 0; j < 4; ++j) {
+                truncatedHash <<= 8;
+                truncatedHash |= hash[offset + j] & 0xFF;
+            }
+            if ((truncatedHash & 0x7FFFFFFF) % 1_000_000 == code) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
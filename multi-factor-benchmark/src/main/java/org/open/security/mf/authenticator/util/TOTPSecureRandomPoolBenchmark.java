@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.authenticator.util;
+
+import org.open.security.mf.authenticator.exception.OpenSecurityMfException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of concurrent secret generation from a {@link TOTPSecureRandomPool}.
+ * <p>
+ * A single stripe is the shared generator every caller queued on before striping, 0 stripes is the default of
+ * twice the available processors. The gap only shows with more cores than one, override the thread count with -t.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class TOTPSecureRandomPoolBenchmark {
+
+    // Bytes of a TOTP secret.
+    private static final int SECRET_BYTES = 10;
+
+    @Param({"SHA1PRNG", "DRBG"})
+    public String algorithm;
+
+    @Param({"1", "0"})
+    public int stripes;
+
+    private TOTPSecureRandomPool pool;
+
+    @Setup
+    public void setUp() throws OpenSecurityMfException {
+
+        pool = new TOTPSecureRandomPool(algorithm, "SUN", stripes);
+    }
+
+    @TearDown
+    public void tearDown() {
+
+        pool.shutdown();
+    }
+
+    @State(Scope.Thread)
+    public static class Secret {
+
+        private final byte[] bytes = new byte[SECRET_BYTES];
+    }
+
+    @Benchmark
+    public byte[] nextSecret(Secret secret) {
+
+        pool.nextBytes(secret.bytes);
+        return secret.bytes;
+    }
+}
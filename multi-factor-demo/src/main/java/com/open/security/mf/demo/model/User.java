@@ -21,13 +21,14 @@ package com.open.security.mf.demo.model;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.Table;
 
 /**
  * This class represents a User entity.
  */
 @Entity
-@Table(name = "USERS")
+@Table(name = "USERS", indexes = @Index(name = "IDX_USERS_EMAIL", columnList = "EMAIL"))
 public class User {
 
     @Id
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.open.security.mf.demo.repository;
+
+import com.open.security.mf.demo.model.UserView;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * {@link UserQueryRepository} through plain JDBC, reading only the columns of {@link UserView} without entity
+ * materialisation or a persistence context.
+ */
+@Component
+@ConditionalOnProperty(name = "demo.user.query", havingValue = "jdbc")
+public class JdbcUserQueryRepository implements UserQueryRepository {
+
+    private static final String AUTHENTICATE = "SELECT EMAIL, STATUS, SECRET FROM USERS WHERE EMAIL = ? "
+            + "AND PASSWORD = ?";
+    private static final String FIND_BY_EMAIL = "SELECT EMAIL, STATUS, SECRET FROM USERS WHERE EMAIL = ?";
+    private static final RowMapper<UserView> USER_VIEW = (resultSet, row) -> new UserView(resultSet.getString(1),
+            resultSet.getString(2), resultSet.getString(3));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public JdbcUserQueryRepository(JdbcTemplate jdbcTemplate) {
+
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public UserView authenticate(String email, String password) {
+
+        return first(jdbcTemplate.query(AUTHENTICATE, USER_VIEW, email, password));
+    }
+
+    @Override
+    public UserView findByEmail(String email) {
+
+        return first(jdbcTemplate.query(FIND_BY_EMAIL, USER_VIEW, email));
+    }
+
+    private static UserView first(List<UserView> users) {
+
+        return users.isEmpty() ? null : users.get(0);
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.open.security.mf.demo.repository;
+
+import com.open.security.mf.demo.model.User;
+import com.open.security.mf.demo.model.UserView;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * {@link UserQueryRepository} through the JPA {@link UserRepository}.
+ */
+@Component
+@ConditionalOnProperty(name = "demo.user.query", havingValue = "jpa", matchIfMissing = true)
+public class JpaUserQueryRepository implements UserQueryRepository {
+
+    private final UserRepository userRepository;
+
+    public JpaUserQueryRepository(UserRepository userRepository) {
+
+        this.userRepository = userRepository;
+    }
+
+    @Override
+    public UserView authenticate(String email, String password) {
+
+        return toView(userRepository.authenticate(email, password));
+    }
+
+    @Override
+    public UserView findByEmail(String email) {
+
+        return toView(userRepository.findByEmail(email));
+    }
+
+    private static UserView toView(User user) {
+
+        return user == null ? null : new UserView(user.getEmail(), user.getStatus(), user.getSecret());
+    }
+}
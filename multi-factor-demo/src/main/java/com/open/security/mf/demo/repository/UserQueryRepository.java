@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.open.security.mf.demo.repository;
+
+import com.open.security.mf.demo.model.UserView;
+
+/**
+ * Read-only user lookups on the request path. The implementation in use is selected with the demo.user.query
+ * property.
+ */
+public interface UserQueryRepository {
+
+    /**
+     * @param email    email address
+     * @param password password
+     * @return the user with the given credentials, or null
+     */
+    UserView authenticate(String email, String password);
+
+    /**
+     * @param email email address
+     * @return the user with the given email address, or null
+     */
+    UserView findByEmail(String email);
+}
@@ -26,6 +26,8 @@ import org.open.security.mf.authenticator.exception.OpenSecurityMfException;
 import org.open.security.mf.authenticator.service.EmailOTPServiceImpl;
 import com.open.security.mf.demo.constant.Constants;
 import com.open.security.mf.demo.model.User;
+import com.open.security.mf.demo.model.UserView;
+import com.open.security.mf.demo.repository.UserQueryRepository;
 import com.open.security.mf.demo.repository.UserRepository;
 import org.open.security.mf.authenticator.service.TOTPServiceImpl;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -48,6 +50,9 @@ public class UserService {
     @Autowired
     UserRepository userRepository;
 
+    @Autowired
+    UserQueryRepository userQueryRepository;
+
     @Autowired
     EmailOTPServiceImpl emailOTPService;
 
@@ -88,7 +93,7 @@ public class UserService {
         if (cred == null || StringUtils.isBlank(cred.getEmail()) || StringUtils.isBlank(cred.getPassword())) {
             throw Utils.handleException(DEMO_ERROR_AUTHENTICATION_REQUIRED_PARAMS);
         }
-        User user = userRepository.authenticate(cred.getEmail(), cred.getPassword());
+        UserView user = userQueryRepository.authenticate(cred.getEmail(), cred.getPassword());
         if (user == null) {
             throw Utils.handleException(DEMO_ERROR_AUTHENTICATION_WRONG_CRED);
         }
@@ -103,7 +108,7 @@ public class UserService {
         if (StringUtils.isBlank(email) || StringUtils.isBlank(code)) {
             throw Utils.handleException(DEMO_ERROR_AUTHENTICATION_TOTP_REQUIRED_PARAMS);
         }
-        User user = userRepository.findByEmail(email);
+        UserView user = userQueryRepository.findByEmail(email);
         boolean isValid;
         try {
             isValid = totpService.validateCode(user.getSecret(), Integer.valueOf(code));
@@ -0,0 +1,10 @@
+CREATE TABLE USERS (
+  ID VARCHAR(36) PRIMARY KEY,
+  EMAIL VARCHAR(250) NOT NULL,
+  PASSWORD VARCHAR(250) NOT NULL,
+  STATUS VARCHAR(20) DEFAULT NULL,
+  SECRET VARCHAR(250)
+);
+
+-- UserRepository.findByEmail, authenticate and updateStatus look up by email.
+CREATE INDEX IDX_USERS_EMAIL ON USERS (EMAIL);
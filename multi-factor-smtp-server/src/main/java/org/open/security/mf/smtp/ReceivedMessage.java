@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.smtp;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A message accepted by the {@link SMTPServer}.
+ */
+public class ReceivedMessage {
+
+    private final String sender;
+    private final List<String> recipients;
+    private final String data;
+    private final long receivedTime;
+
+    ReceivedMessage(String sender, List<String> recipients, String data, long receivedTime) {
+
+        this.sender = sender;
+        this.recipients = Collections.unmodifiableList(recipients);
+        this.data = data;
+        this.receivedTime = receivedTime;
+    }
+
+    public String getSender() {
+        return sender;
+    }
+
+    public List<String> getRecipients() {
+        return recipients;
+    }
+
+    /**
+     * @return the raw message, headers and body, with the dot stuffing removed
+     */
+    public String getData() {
+        return data;
+    }
+
+    public long getReceivedTime() {
+        return receivedTime;
+    }
+}
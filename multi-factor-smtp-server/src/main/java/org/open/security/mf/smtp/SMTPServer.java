@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.smtp;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Embedded SMTP server standing in for the mail relay in tests and benchmarks.
+ * <p>
+ * It accepts EHLO/HELO, AUTH PLAIN/LOGIN with any credentials, MAIL, RCPT, DATA, RSET, NOOP and QUIT, and records
+ * every accepted message in memory. STARTTLS is not offered. Latency, throttling and failures are injected through
+ * {@link SMTPServerSettings}.
+ */
+public class SMTPServer {
+
+    private static final Log log = LogFactory.getLog(SMTPServer.class);
+
+    private final int port;
+    private final SMTPServerSettings settings;
+    private ServerSocket serverSocket;
+    private ExecutorService connectionExecutor;
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+    private final List<ReceivedMessage> messages = new ArrayList<>();
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final LongAdder connections = new LongAdder();
+    private final LongAdder commands = new LongAdder();
+    private final LongAdder received = new LongAdder();
+
+    /**
+     * @param port     port to listen on, 0 for any free port
+     * @param settings behaviour of the server
+     */
+    public SMTPServer(int port, SMTPServerSettings settings) {
+
+        this.port = port;
+        this.settings = settings;
+    }
+
+    /**
+     * Start listening on the loopback address.
+     *
+     * @throws IOException if the port couldn't be bound
+     */
+    public synchronized void start() throws IOException {
+
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        AtomicInteger count = new AtomicInteger();
+        connectionExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "smtp-server-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        connectionExecutor.execute(this::accept);
+        log.info("SMTP server listening on port " + getPort() + ".");
+    }
+
+    /**
+     * Close the listening socket and every open connection.
+     */
+    public synchronized void stop() {
+
+        if (serverSocket == null) {
+            return;
+        }
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            log.debug("Error while closing the server socket.", e);
+        }
+        for (Socket socket : sockets) {
+            close(socket);
+        }
+        connectionExecutor.shutdownNow();
+        try {
+            connectionExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        serverSocket = null;
+    }
+
+    /**
+     * @return the port the server listens on, resolved once started
+     */
+    public int getPort() {
+
+        return serverSocket == null ? port : serverSocket.getLocalPort();
+    }
+
+    public SMTPServerSettings getSettings() {
+
+        return settings;
+    }
+
+    /**
+     * @return a copy of the messages received so far
+     */
+    public List<ReceivedMessage> getMessages() {
+
+        synchronized (messages) {
+            return new ArrayList<>(messages);
+        }
+    }
+
+    public int getMessageCount() {
+
+        synchronized (messages) {
+            return messages.size();
+        }
+    }
+
+    public void clearMessages() {
+
+        synchronized (messages) {
+            messages.clear();
+        }
+    }
+
+    /**
+     * Wait until at least the given number of messages has been received.
+     *
+     * @param count         number of messages to wait for
+     * @param timeoutMillis maximum time to wait
+     * @return true if the messages were received in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitMessages(int count, long timeoutMillis) throws InterruptedException {
+
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (messages) {
+            while (messages.size() < count) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                messages.wait(remaining);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @return number of messages received since start, recorded or not
+     */
+    public long getReceived() {
+
+        return received.sum();
+    }
+
+    /**
+     * @return number of connections accepted since start
+     */
+    public long getConnections() {
+
+        return connections.sum();
+    }
+
+    public int getActiveConnections() {
+
+        return activeConnections.get();
+    }
+
+    /**
+     * @return number of commands received since start
+     */
+    public long getCommands() {
+
+        return commands.sum();
+    }
+
+    void received(ReceivedMessage message) {
+
+        received.increment();
+        if (!settings.isRecordMessages()) {
+            return;
+        }
+        synchronized (messages) {
+            messages.add(message);
+            messages.notifyAll();
+        }
+    }
+
+    void commandReceived() {
+
+        commands.increment();
+    }
+
+    private void accept() {
+
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                // Server socket closed.
+                return;
+            } catch (IOException e) {
+                log.error("Error while accepting an SMTP connection.", e);
+                continue;
+            }
+            connections.increment();
+            sockets.add(socket);
+            connectionExecutor.execute(() -> serve(socket));
+        }
+    }
+
+    private void serve(Socket socket) {
+
+        int active = activeConnections.incrementAndGet();
+        try {
+            new SMTPSession(this, settings, socket).run(active > settings.getMaxConnections());
+        } catch (IOException e) {
+            log.debug("SMTP connection closed.", e);
+        } finally {
+            activeConnections.decrementAndGet();
+            sockets.remove(socket);
+            close(socket);
+        }
+    }
+
+    private static void close(Socket socket) {
+
+        try {
+            socket.close();
+        } catch (IOException e) {
+            log.debug("Error while closing an SMTP connection.", e);
+        }
+    }
+}
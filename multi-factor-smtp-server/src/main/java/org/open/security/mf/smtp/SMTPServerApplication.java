@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.smtp;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the {@link SMTPServer} standalone for benchmarks against a running demo.
+ * <p>
+ * Usage: {@code java -jar multi-factor-smtp-server-1.0.jar [port] [latencyMillis]}, where the latency applies to
+ * every command. Messages are only counted, and the count is printed every ten seconds.
+ */
+public class SMTPServerApplication {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 2525;
+        SMTPServerSettings settings = new SMTPServerSettings();
+        settings.setRecordMessages(false);
+        if (args.length > 1) {
+            long latency = Long.parseLong(args[1]);
+            for (String command : new String[]{"CONNECT", "EHLO", "HELO", "AUTH", "MAIL", "RCPT", "DATA", "NOOP"}) {
+                settings.setLatency(command, latency);
+            }
+        }
+        SMTPServer server = new SMTPServer(port, settings);
+        server.start();
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            stopped.countDown();
+        }));
+        long reported = 0;
+        while (!stopped.await(10, TimeUnit.SECONDS)) {
+            long received = server.getReceived();
+            if (received != reported) {
+                System.out.println("Received " + received + " messages over " + server.getConnections()
+                        + " connections.");
+                reported = received;
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.smtp;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Behaviour of the {@link SMTPServer}: latency per command, throttling limits and injected failures.
+ * <p>
+ * Commands are matched by their verb, e.g. "MAIL", "RCPT", "DATA", and "CONNECT" for the greeting. Settings can
+ * be changed while the server is running and apply to the next command.
+ */
+public class SMTPServerSettings {
+
+    /**
+     * Reply code that makes the server drop the connection instead of replying.
+     */
+    public static final int DROP_CONNECTION = 0;
+
+    private volatile String hostname = "localhost";
+    private volatile int maxConnections = 100;
+    private volatile int maxMessagesPerConnection;
+    private volatile int maxRecipients = 100;
+    private volatile boolean recordMessages = true;
+    private final Map<String, Long> latencies = new ConcurrentHashMap<>();
+    private final Map<String, Failure> failures = new ConcurrentHashMap<>();
+
+    public String getHostname() {
+        return hostname;
+    }
+
+    public void setHostname(String hostname) {
+        this.hostname = hostname;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * @param maxConnections connections above this limit are greeted with 421 and closed
+     */
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public int getMaxMessagesPerConnection() {
+        return maxMessagesPerConnection;
+    }
+
+    /**
+     * @param maxMessagesPerConnection MAIL commands above this limit get 421 and the connection is closed, 0 for
+     *                                 no limit
+     */
+    public void setMaxMessagesPerConnection(int maxMessagesPerConnection) {
+        this.maxMessagesPerConnection = maxMessagesPerConnection;
+    }
+
+    public int getMaxRecipients() {
+        return maxRecipients;
+    }
+
+    public void setMaxRecipients(int maxRecipients) {
+        this.maxRecipients = maxRecipients;
+    }
+
+    public boolean isRecordMessages() {
+        return recordMessages;
+    }
+
+    /**
+     * @param recordMessages whether received messages are kept, when false they are only counted
+     */
+    public void setRecordMessages(boolean recordMessages) {
+        this.recordMessages = recordMessages;
+    }
+
+    /**
+     * Delay the reply to the command.
+     *
+     * @param command       command verb
+     * @param latencyMillis delay before the reply is written
+     */
+    public void setLatency(String command, long latencyMillis) {
+
+        latencies.put(command.toUpperCase(Locale.ROOT), latencyMillis);
+    }
+
+    public long getLatency(String command) {
+
+        Long latency = latencies.get(command);
+        return latency == null ? 0 : latency;
+    }
+
+    /**
+     * Fail every n-th occurrence of the command, counted across connections.
+     *
+     * @param command   command verb
+     * @param replyCode reply code sent instead of the normal reply, {@link #DROP_CONNECTION} to drop the connection
+     * @param everyNth  1 fails every occurrence, 3 fails every third
+     */
+    public void setFailure(String command, int replyCode, int everyNth) {
+
+        failures.put(command.toUpperCase(Locale.ROOT), new Failure(replyCode, everyNth));
+    }
+
+    public void clearFailures() {
+
+        failures.clear();
+    }
+
+    Failure getFailure(String command) {
+
+        return failures.get(command);
+    }
+
+    /**
+     * An injected failure and the number of times its command has been seen.
+     */
+    static final class Failure {
+
+        private final int replyCode;
+        private final int everyNth;
+        private long count;
+
+        private Failure(int replyCode, int everyNth) {
+
+            this.replyCode = replyCode;
+            this.everyNth = Math.max(1, everyNth);
+        }
+
+        int getReplyCode() {
+
+            return replyCode;
+        }
+
+        synchronized boolean next() {
+
+            return ++count % everyNth == 0;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.open.security.mf.smtp;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A single SMTP conversation, run on the connection's thread.
+ */
+class SMTPSession {
+
+    private static final String CRLF = "\r\n";
+
+    private final SMTPServer server;
+    private final SMTPServerSettings settings;
+    private final Socket socket;
+    private final BufferedReader reader;
+    private final OutputStream writer;
+    private String sender;
+    private final List<String> recipients = new ArrayList<>();
+    private int messageCount;
+
+    SMTPSession(SMTPServer server, SMTPServerSettings settings, Socket socket) throws IOException {
+
+        this.server = server;
+        this.settings = settings;
+        this.socket = socket;
+        this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+        this.writer = socket.getOutputStream();
+    }
+
+    /**
+     * @param throttled whether the connection is above the connection limit
+     * @throws IOException if the connection fails
+     */
+    void run(boolean throttled) throws IOException {
+
+        if (throttled) {
+            reply("421 " + settings.getHostname() + " Too many connections");
+            return;
+        }
+        if (!inject("CONNECT")) {
+            return;
+        }
+        reply("220 " + settings.getHostname() + " ESMTP ready");
+        String line;
+        while ((line = reader.readLine()) != null) {
+            server.commandReceived();
+            int space = line.indexOf(' ');
+            String verb = (space < 0 ? line : line.substring(0, space)).toUpperCase(Locale.ROOT);
+            String argument = space < 0 ? "" : line.substring(space + 1).trim();
+            if ("DATA".equals(verb)) {
+                if (!data()) {
+                    return;
+                }
+                continue;
+            }
+            if (!inject(verb)) {
+                if (socket.isClosed()) {
+                    return;
+                }
+                continue;
+            }
+            switch (verb) {
+                case "EHLO":
+                    reset();
+                    reply("250-" + settings.getHostname() + CRLF + "250-8BITMIME" + CRLF + "250 AUTH PLAIN LOGIN");
+                    break;
+                case "HELO":
+                    reset();
+                    reply("250 " + settings.getHostname());
+                    break;
+                case "AUTH":
+                    auth(argument);
+                    break;
+                case "MAIL":
+                    if (settings.getMaxMessagesPerConnection() > 0
+                            && messageCount >= settings.getMaxMessagesPerConnection()) {
+                        reply("421 Too many messages on this connection");
+                        return;
+                    }
+                    reset();
+                    sender = address(argument);
+                    reply("250 OK");
+                    break;
+                case "RCPT":
+                    if (sender == null) {
+                        reply("503 Need MAIL command");
+                    } else if (recipients.size() >= settings.getMaxRecipients()) {
+                        reply("452 Too many recipients");
+                    } else {
+                        recipients.add(address(argument));
+                        reply("250 OK");
+                    }
+                    break;
+                case "RSET":
+                    reset();
+                    reply("250 OK");
+                    break;
+                case "NOOP":
+                    reply("250 OK");
+                    break;
+                case "VRFY":
+                    reply("252 Cannot verify user");
+                    break;
+                case "QUIT":
+                    reply("221 Bye");
+                    return;
+                default:
+                    reply("500 Command not recognized");
+            }
+        }
+    }
+
+    private boolean data() throws IOException {
+
+        if (recipients.isEmpty()) {
+            reply("503 Need RCPT command");
+            return true;
+        }
+        reply("354 End data with <CR><LF>.<CR><LF>");
+        StringBuilder data = new StringBuilder();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (".".equals(line)) {
+                break;
+            }
+            // Remove the dot stuffing.
+            data.append(line.startsWith(".") ? line.substring(1) : line).append(CRLF);
+        }
+        if (line == null) {
+            return false;
+        }
+        // Failures and latency for DATA apply to the reply after the message, where relays reject.
+        if (!inject("DATA")) {
+            reset();
+            return !socket.isClosed();
+        }
+        server.received(new ReceivedMessage(sender, new ArrayList<>(recipients), data.toString(),
+                System.currentTimeMillis()));
+        messageCount++;
+        reset();
+        reply("250 OK queued");
+        return true;
+    }
+
+    private void auth(String argument) throws IOException {
+
+        String[] parts = argument.split(" ");
+        String mechanism = parts[0].toUpperCase(Locale.ROOT);
+        if ("PLAIN".equals(mechanism)) {
+            if (parts.length < 2) {
+                reply("334 ");
+                reader.readLine();
+            }
+            reply("235 Authentication successful");
+        } else if ("LOGIN".equals(mechanism)) {
+            if (parts.length < 2) {
+                // Username: and Password: in base64.
+                reply("334 VXNlcm5hbWU6");
+                reader.readLine();
+            }
+            reply("334 UGFzc3dvcmQ6");
+            reader.readLine();
+            reply("235 Authentication successful");
+        } else {
+            reply("504 Unrecognized authentication type");
+        }
+    }
+
+    /**
+     * Apply the configured latency and failure for the command.
+     *
+     * @return true if the command should get its normal reply
+     */
+    private boolean inject(String verb) throws IOException {
+
+        long latency = settings.getLatency(verb);
+        if (latency > 0) {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted", e);
+            }
+        }
+        SMTPServerSettings.Failure failure = settings.getFailure(verb);
+        if (failure == null || !failure.next()) {
+            return true;
+        }
+        if (failure.getReplyCode() == SMTPServerSettings.DROP_CONNECTION) {
+            socket.close();
+        } else {
+            reply(failure.getReplyCode() + " Injected failure");
+        }
+        return false;
+    }
+
+    private void reset() {
+
+        sender = null;
+        recipients.clear();
+    }
+
+    private void reply(String reply) throws IOException {
+
+        writer.write((reply + CRLF).getBytes(StandardCharsets.US_ASCII));
+        writer.flush();
+    }
+
+    private static String address(String argument) {
+
+        int start = argument.indexOf('<');
+        int end = argument.indexOf('>', start + 1);
+        if (start >= 0 && end > start) {
+            return argument.substring(start + 1, end);
+        }
+        int colon = argument.indexOf(':');
+        return colon < 0 ? argument : argument.substring(colon + 1).trim();
+    }
+}